@@ -0,0 +1,231 @@
+package talon;
+
+import talon.signature.learning.Extraction;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Runs quotation and signature extraction asynchronously on an executor,
+ * the results are completed futures.
+ * <p>
+ * At most maxInFlight calls run at once, the next maxQueued calls wait
+ * for them to complete and the calls above that are rejected: their futures
+ * complete exceptionally with RejectedExecutionException right away. So
+ * traffic spikes are either absorbed by the bounded queue or pushed back
+ * to the caller, and the executor never gets more than maxInFlight tasks.
+ * Queued calls whose futures are cancelled are skipped.
+ */
+public class AsyncTalon implements AutoCloseable {
+    public static final int DEFAULT_MAX_QUEUED = 1024;
+
+    private final Talon talon;
+    private final SignatureModel model;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final int maxQueued;
+    // executor created by the instance, shut down on close
+    private final ExecutorService owned;
+
+    // guarded by queue
+    private final Queue<Call<?>> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    /**
+     * Runs as many calls at once as there are processors on a new default
+     * executor, the executor is shut down by {@link #close()}.
+     */
+    public AsyncTalon(SignatureModel model) {
+        this(model, defaultExecutor(), Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_QUEUED, true);
+    }
+
+    /**
+     * The executor is left running when the instance is closed.
+     */
+    public AsyncTalon(SignatureModel model, Executor executor, int maxInFlight, int maxQueued) {
+        this(model, executor, maxInFlight, maxQueued, false);
+    }
+
+    private AsyncTalon(SignatureModel model, Executor executor, int maxInFlight, int maxQueued, boolean owned) {
+        if (maxInFlight < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("maxInFlight " + maxInFlight + ", maxQueued " + maxQueued);
+        }
+        this.talon = new Talon(model);
+        this.model = model;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.owned = owned ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task when running
+     * on Java 21 or later, a cached pool of daemon threads otherwise.
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "talon-async");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * See {@link Quotation#extractFromPlain(CharSequence)}.
+     */
+    public CompletableFuture<String> extractFromPlain(final CharSequence body) {
+        return submit(new Supplier<String>() {
+            @Override
+            public String get() {
+                return Quotation.extractFromPlain(body);
+            }
+        });
+    }
+
+    /**
+     * See {@link Extraction#extract(CharSequence, String, SignatureModel)}.
+     */
+    public CompletableFuture<ExtractedSignature> extract(final CharSequence body, final String sender) {
+        return submit(new Supplier<ExtractedSignature>() {
+            @Override
+            public ExtractedSignature get() {
+                return Extraction.extract(body, sender, model);
+            }
+        });
+    }
+
+    /**
+     * See {@link Talon#process(Talon.Message)}.
+     */
+    public CompletableFuture<ExtractedSignature> process(final Talon.Message message) {
+        return submit(new Supplier<ExtractedSignature>() {
+            @Override
+            public ExtractedSignature get() {
+                return talon.process(message);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of calls running or submitted to the executor.
+     */
+    public int inFlight() {
+        synchronized (queue) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Returns the number of calls waiting for running ones to complete.
+     */
+    public int queued() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+        Call<T> call = new Call<>(supplier);
+        boolean rejected = false;
+        synchronized (queue) {
+            if (inFlight == maxInFlight) {
+                if (queue.size() == maxQueued) {
+                    rejected = true;
+                } else {
+                    queue.add(call);
+                    return call.future;
+                }
+            } else {
+                inFlight++;
+            }
+        }
+        if (rejected) {
+            // dependent stages of the future run outside of the lock
+            call.future.completeExceptionally(new RejectedExecutionException(
+                    maxInFlight + " calls in flight and " + maxQueued + " queued"));
+            return call.future;
+        }
+        if (!execute(call)) {
+            next();
+        }
+        return call.future;
+    }
+
+    /**
+     * Runs the next queued call once a call completed.
+     */
+    private void next() {
+        while (true) {
+            Call<?> call;
+            synchronized (queue) {
+                call = queue.poll();
+                if (call == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            if (!call.future.isCancelled() && execute(call)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns false if the executor rejected the call, its future is completed then.
+     */
+    private boolean execute(Call<?> call) {
+        try {
+            executor.execute(call);
+            return true;
+        } catch (RejectedExecutionException e) {
+            call.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    /**
+     * Shuts down the executor created by the instance.
+     */
+    @Override
+    public void close() {
+        if (owned != null) {
+            owned.shutdown();
+        }
+    }
+
+    private class Call<T> implements Runnable {
+        final Supplier<T> supplier;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Call(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                next();
+            }
+        }
+    }
+}
@@ -4,25 +4,98 @@ import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Replaces matches of a pattern with the text built by a callback.
+ * <p>
+ * Replacements are appended as they are, '$' and '\' have no special meaning.
+ */
 public class CallbackMatcher {
     public interface ReplaceCallback {
         String replaceMatch(MatchResult matchResult);
     }
 
+    /**
+     * Appends the replacement of a match to the output.
+     * <p>
+     * The match is only valid during the call, lineStart is the index of the
+     * first character of the line the match starts on (the line starts
+     * after the last '\n' before the match).
+     */
+    public interface AppendCallback {
+        void appendMatch(CharSequence input, MatchResult match, int lineStart, StringBuilder output);
+    }
+
     private final Pattern pattern;
 
     public CallbackMatcher(Pattern pattern) {
         this.pattern = pattern;
     }
 
-    public String replaceMatches(String string, ReplaceCallback callback) {
-        final Matcher matcher = this.pattern.matcher(string);
-        StringBuffer buffer = new StringBuffer();
-        while (matcher.find()) {
-            MatchResult matchResult = matcher.toMatchResult();
-            matcher.appendReplacement(buffer, callback.replaceMatch(matchResult));
+    public String replaceMatches(String string, final ReplaceCallback callback) {
+        return replaceMatches(string, new AppendCallback() {
+            @Override
+            public void appendMatch(CharSequence input, MatchResult match, int lineStart, StringBuilder output) {
+                output.append(callback.replaceMatch(match));
+            }
+        });
+    }
+
+    /**
+     * Returns the input with all matches replaced, the input itself
+     * is returned if there are no matches.
+     */
+    public String replaceMatches(CharSequence input, AppendCallback callback) {
+        Matcher matcher = pattern.matcher(input);
+        if (!find(matcher, input, 0)) {
+            return input.toString();
         }
-        matcher.appendTail(buffer);
-        return buffer.toString();
+        StringBuilder output = new StringBuilder(input.length() + 16);
+        return replaceMatches(matcher, input, callback, output).toString();
+    }
+
+    /**
+     * Appends the input with all matches replaced to the output,
+     * the output could be reused between calls.
+     */
+    public StringBuilder replaceMatches(CharSequence input, AppendCallback callback, StringBuilder output) {
+        Matcher matcher = pattern.matcher(input);
+        if (!find(matcher, input, 0)) {
+            return output.append(input);
+        }
+        return replaceMatches(matcher, input, callback, output);
+    }
+
+    /**
+     * Finds the next match starting at or after from, the previous match
+     * ends at from.
+     * <p>
+     * Subclasses could skip the parts of the input which can't start
+     * a match instead of trying the pattern at every position.
+     */
+    protected boolean find(Matcher matcher, CharSequence input, int from) {
+        return matcher.find();
+    }
+
+    /**
+     * Replaces the current match of the matcher and all the next ones.
+     */
+    private StringBuilder replaceMatches(Matcher matcher, CharSequence input, AppendCallback callback,
+                                        StringBuilder output) {
+        int position = 0;
+        int lineStart = 0;
+        // every character is scanned for line breaks once
+        int scanned = 0;
+        do {
+            int start = matcher.start();
+            for (; scanned < start; scanned++) {
+                if (input.charAt(scanned) == '\n') {
+                    lineStart = scanned + 1;
+                }
+            }
+            output.append(input, position, start);
+            callback.appendMatch(input, matcher, lineStart, output);
+            position = matcher.end();
+        } while (find(matcher, input, position));
+        return output.append(input, position, input.length());
     }
 }
@@ -0,0 +1,167 @@
+package talon;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lines of the messages of a conversation already processed, so that the
+ * quoted history of the next message is recognized without searching it
+ * for splitters, see {@link Quotation#extractFromPlain(CharSequence, Conversation)}.
+ * <p>
+ * A message is indexed as the rolling hashes of all its prefixes: the
+ * quoted history of a reply is usually the previous message, or its first
+ * lines if the history is cut. Lines are compared without quotation markers
+ * and leading and trailing whitespaces, empty lines are skipped.
+ * <p>
+ * The hashes are kept in an open addressing table outside of the heap, it
+ * holds at most maxLines hashes. A message which doesn't fit clears the
+ * earlier ones, the next message likely quotes the last one. The
+ * conversation isn't thread safe, its messages are processed in order.
+ */
+public final class Conversation {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long ROLLING_BASE = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Largest max lines, the table of twice as many hashes fits a direct buffer.
+     */
+    public static final int MAX_LINES = 1 << 26;
+
+    private final ByteBuffer table;
+    private final int mask;
+    private final int maxLines;
+    private int size;
+
+    public Conversation(int maxLines) {
+        if (maxLines <= 0 || maxLines > MAX_LINES) {
+            throw new IllegalArgumentException("Max lines should be between 1 and " + MAX_LINES + ": " + maxLines);
+        }
+        // the table is at most half full
+        long capacity = (long) Integer.highestOneBit(Math.max(1, maxLines - 1)) << 2;
+        this.table = ByteBuffer.allocateDirect((int) (capacity * 8));
+        this.mask = (int) capacity - 1;
+        this.maxLines = maxLines;
+    }
+
+    /**
+     * Returns the number of hashes held, one per non empty line of the
+     * indexed messages.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int maxLines() {
+        return maxLines;
+    }
+
+    /**
+     * Indexes the lines of the message.
+     */
+    void add(MessageLines lines) {
+        int count = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (lineHash(lines, i) != 0) {
+                count++;
+            }
+        }
+        if (size + count > maxLines) {
+            clear();
+        }
+        long hash = 0;
+        for (int i = 0; i < lines.size() && size < maxLines; i++) {
+            long line = lineHash(lines, i);
+            if (line != 0) {
+                hash = hash * ROLLING_BASE + line;
+                insert(hash);
+            }
+        }
+    }
+
+    /**
+     * Returns the first line of the longest run of the last lines equal to
+     * the first lines of an indexed message, -1 if there is no such run.
+     * <p>
+     * Hashes of all the runs are computed in a single bottom up pass.
+     */
+    int findKnownLines(MessageLines lines) {
+        int known = -1;
+        long hash = 0;
+        long power = 1;
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            long line = lineHash(lines, i);
+            if (line != 0) {
+                hash += line * power;
+                power *= ROLLING_BASE;
+                if (contains(hash)) {
+                    known = i;
+                }
+            }
+        }
+        return known;
+    }
+
+    private void clear() {
+        for (int i = 0; i <= mask; i++) {
+            table.putLong(i * 8, 0);
+        }
+        size = 0;
+    }
+
+    private void insert(long hash) {
+        // 0 marks empty slots
+        long key = hash == 0 ? 1 : hash;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = table.getLong(i * 8);
+            if (k == key) {
+                return;
+            }
+            if (k == 0) {
+                table.putLong(i * 8, key);
+                size++;
+                return;
+            }
+        }
+    }
+
+    private boolean contains(long hash) {
+        long key = hash == 0 ? 1 : hash;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = table.getLong(i * 8);
+            if (k == key) {
+                return true;
+            }
+            if (k == 0) {
+                return false;
+            }
+        }
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+    }
+
+    /**
+     * Returns the hash of the line without quotation markers and leading
+     * and trailing whitespaces, 0 if nothing is left.
+     */
+    private static long lineHash(MessageLines lines, int i) {
+        CharSequence text = lines.text();
+        int start = lines.start(i);
+        int end = lines.end(i);
+        while (start < end && (text.charAt(start) <= ' ' || text.charAt(start) == '>')) {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return 0;
+        }
+        long hash = FNV_OFFSET;
+        for (int j = start; j < end; j++) {
+            hash = (hash ^ text.charAt(j)) * FNV_PRIME;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
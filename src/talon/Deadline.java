@@ -0,0 +1,120 @@
+package talon;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time after which processing of a message should be given up.
+ * <p>
+ * The time is measured either by the wall clock or by the CPU time of the
+ * thread checking the deadline. Regular expressions can't be interrupted,
+ * so the text they run on is wrapped with {@link #guard(CharSequence)}
+ * which checks the deadline while the characters are read.
+ */
+public final class Deadline {
+    /**
+     * Deadline which never expires, guarding a text returns the text itself.
+     */
+    public static final Deadline NONE = new Deadline(false, Long.MAX_VALUE);
+
+    // characters read between two checks of a guarded text
+    private static final int CHECK_INTERVAL = 4096;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final boolean cpuTime;
+    private final long time;
+
+    private Deadline(boolean cpuTime, long time) {
+        this.cpuTime = cpuTime;
+        this.time = time;
+    }
+
+    /**
+     * Returns the deadline expiring when the wall clock time runs out.
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(false, System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * Returns the deadline expiring when the current thread used up the CPU
+     * time. It should be checked by the current thread only.
+     * <p>
+     * The wall clock is used if the JVM doesn't measure CPU time of threads.
+     */
+    public static Deadline cpuTime(long duration, TimeUnit unit) {
+        if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+            return after(duration, unit);
+        }
+        return new Deadline(true, THREADS.getCurrentThreadCpuTime() + unit.toNanos(duration));
+    }
+
+    public boolean isExpired() {
+        if (this == NONE) {
+            return false;
+        }
+        long now = cpuTime ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+        return now - time >= 0;
+    }
+
+    /**
+     * Throws DeadlineExceededException if the deadline expired.
+     */
+    public void check() {
+        if (isExpired()) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    /**
+     * Returns the text checking the deadline every few thousands characters
+     * read, e.g. by a regular expression matcher. DeadlineExceededException
+     * is thrown from {@link CharSequence#charAt(int)} once the deadline
+     * expires.
+     */
+    public CharSequence guard(CharSequence text) {
+        if (this == NONE || text instanceof GuardedText) {
+            return text;
+        }
+        return new GuardedText(text, this, new int[1]);
+    }
+
+    private static class GuardedText implements CharSequence {
+        private final CharSequence text;
+        private final Deadline deadline;
+        // characters read, shared with subsequences
+        private final int[] reads;
+
+        GuardedText(CharSequence text, Deadline deadline, int[] reads) {
+            this.text = text;
+            this.deadline = deadline;
+            this.reads = reads;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads[0] == CHECK_INTERVAL) {
+                reads[0] = 0;
+                deadline.check();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new GuardedText(text.subSequence(start, end), deadline, reads);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package talon;
+
+/**
+ * Thrown when processing of a message runs past its {@link Deadline}.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException() {
+        super("Deadline exceeded");
+    }
+}
@@ -0,0 +1,167 @@
+package talon;
+
+/**
+ * 128-bit hash of a sequence of texts and numbers, collisions are unlikely
+ * enough to take equal hashes for equal contents.
+ * <p>
+ * Uses the MurmurHash3 x64 128-bit mixing over the UTF-16 characters, four
+ * characters per 64-bit word. Every text is followed by its length, so
+ * ("ab", "c") and ("a", "bc") hash differently.
+ */
+public final class Hash128 {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long high;
+    private final long low;
+
+    private Hash128(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static Hash128 of(CharSequence... texts) {
+        Hasher hasher = new Hasher();
+        for (CharSequence text : texts) {
+            hasher.put(text);
+        }
+        return hasher.hash();
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Hash128 hash = (Hash128) o;
+
+        return high == hash.high && low == hash.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * Accumulates the hash, it could be used once.
+     */
+    public static final class Hasher {
+        private long h1;
+        private long h2;
+        // pending word, it's mixed in with the next one
+        private long k1;
+        private boolean pending;
+        private long words;
+
+        public Hasher() {
+            this(0);
+        }
+
+        /**
+         * Hashes depend on the seed, a secret seed makes collisions hard to
+         * craft for those who don't know it.
+         */
+        public Hasher(long seed) {
+            h1 = seed;
+            h2 = seed;
+        }
+
+        /**
+         * Puts the characters of the text, null is hashed as no characters
+         * with length -1.
+         */
+        public Hasher put(CharSequence text) {
+            if (text == null) {
+                return put(-1L);
+            }
+            int n = text.length();
+            int i = 0;
+            for (; i + 4 <= n; i += 4) {
+                word((long) text.charAt(i) | (long) text.charAt(i + 1) << 16 |
+                        (long) text.charAt(i + 2) << 32 | (long) text.charAt(i + 3) << 48);
+            }
+            if (i < n) {
+                long word = 0;
+                for (int shift = 0; i < n; i++, shift += 16) {
+                    word |= (long) text.charAt(i) << shift;
+                }
+                word(word);
+            }
+            return put((long) n);
+        }
+
+        public Hasher put(long value) {
+            word(value);
+            return this;
+        }
+
+        private void word(long word) {
+            words++;
+            if (!pending) {
+                k1 = word;
+                pending = true;
+                return;
+            }
+            pending = false;
+            long k2 = word;
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        public Hash128 hash() {
+            if (pending) {
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+            }
+            long length = words * 8;
+            long h1 = this.h1 ^ length;
+            long h2 = this.h2 ^ length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Hash128(h1, h2);
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package talon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds occurrences of a number of keywords in a single pass over the text
+ * (Aho-Corasick automaton compiled into a transition table).
+ * <p>
+ * Keywords are grouped, every group is reported with its own flag:
+ * the i-th group sets bit {@code 1 << i}. Matching could ignore case
+ * of ASCII letters.
+ */
+public class KeywordMatcher {
+    private final boolean ignoreCase;
+    private final int[] asciiClasses = new int[128];
+    // sorted non ASCII keyword characters and their classes
+    private final char[] otherChars;
+    private final int[] otherClasses;
+    // number of character classes, class 0 is for characters not used in keywords
+    private final int classes;
+    private final int[] transitions;
+    private final int[] outputs;
+
+    public KeywordMatcher(String[]... keywordGroups) {
+        this(true, keywordGroups);
+    }
+
+    public KeywordMatcher(boolean ignoreCase, String[]... keywordGroups) {
+        this.ignoreCase = ignoreCase;
+        // number the characters used in keywords
+        StringBuilder other = new StringBuilder();
+        int classes = 1;
+        for (String[] keywords : keywordGroups) {
+            for (String keyword : keywords) {
+                for (char c : fold(keyword).toCharArray()) {
+                    if (c < 128) {
+                        if (asciiClasses[c] == 0) {
+                            asciiClasses[c] = classes++;
+                        }
+                    } else if (other.indexOf(String.valueOf(c)) < 0) {
+                        other.append(c);
+                    }
+                }
+            }
+        }
+        otherChars = other.toString().toCharArray();
+        Arrays.sort(otherChars);
+        otherClasses = new int[otherChars.length];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherClasses[i] = classes++;
+        }
+        this.classes = classes;
+
+        // build the trie of keywords
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> trieOutputs = new ArrayList<>();
+        trie.add(newState(classes));
+        trieOutputs.add(0);
+        for (int group = 0; group < keywordGroups.length; group++) {
+            for (String keyword : keywordGroups[group]) {
+                int state = 0;
+                for (char c : fold(keyword).toCharArray()) {
+                    int cls = charClass(c);
+                    if (trie.get(state)[cls] < 0) {
+                        trie.get(state)[cls] = trie.size();
+                        trie.add(newState(classes));
+                        trieOutputs.add(0);
+                    }
+                    state = trie.get(state)[cls];
+                }
+                trieOutputs.set(state, trieOutputs.get(state) | 1 << group);
+            }
+        }
+
+        // turn the trie into automaton following failure links breadth first
+        transitions = new int[trie.size() * classes];
+        outputs = new int[trie.size()];
+        int[] failures = new int[trie.size()];
+        int[] queue = new int[trie.size()];
+        int head = 0;
+        int tail = 0;
+        for (int cls = 0; cls < classes; cls++) {
+            int next = trie.get(0)[cls];
+            if (next > 0) {
+                transitions[cls] = next;
+                queue[tail++] = next;
+            }
+        }
+        outputs[0] = trieOutputs.get(0);
+        while (head < tail) {
+            int state = queue[head++];
+            outputs[state] = trieOutputs.get(state) | outputs[failures[state]];
+            for (int cls = 0; cls < classes; cls++) {
+                int next = trie.get(state)[cls];
+                if (next > 0) {
+                    failures[next] = transitions[failures[state] * classes + cls];
+                    transitions[state * classes + cls] = next;
+                    queue[tail++] = next;
+                } else {
+                    transitions[state * classes + cls] = transitions[failures[state] * classes + cls];
+                }
+            }
+        }
+    }
+
+    private static int[] newState(int classes) {
+        int[] state = new int[classes];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private String fold(String keyword) {
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private char fold(char c) {
+        return ignoreCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private int charClass(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        int i = Arrays.binarySearch(otherChars, c);
+        return i >= 0 ? otherClasses[i] : 0;
+    }
+
+    /**
+     * Returns the state of the automaton after reading the character,
+     * matching starts from state 0.
+     */
+    public int next(int state, char c) {
+        return transitions[state * classes + charClass(fold(c))];
+    }
+
+    /**
+     * Returns flags of the keyword groups ending at the last character read
+     * to get to the state.
+     */
+    public int flags(int state) {
+        return outputs[state];
+    }
+
+    /**
+     * Returns flags of the keyword groups found in the text.
+     */
+    public int match(CharSequence text) {
+        int flags = 0;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            flags |= outputs[state];
+        }
+        return flags;
+    }
+
+    /**
+     * Returns flags of the keyword groups found in each of the lines of the text
+     * separated by '\n'. Keywords are reported for the line they end at.
+     */
+    public int[] matchLines(CharSequence text, int linesCount) {
+        int[] flags = new int[linesCount];
+        int state = 0;
+        int line = 0;
+        for (int i = 0; i < text.length() && line < linesCount; i++) {
+            char c = text.charAt(i);
+            state = next(state, c);
+            flags[line] |= outputs[state];
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,176 @@
+package talon;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded map evicting the least recently used entries.
+ * <p>
+ * Entries are spread over independently locked segments, each keeping its
+ * own access order, so that concurrent lookups of different keys rarely
+ * contend.
+ * <p>
+ * Besides the number of entries the cache could be bounded by the total
+ * weight of the entries, e.g. the size of the cached values. Every segment
+ * gets its share of both bounds.
+ */
+public class LruCache<K, V> {
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    /**
+     * Computes the weight of an entry, it shouldn't change while the entry is cached.
+     */
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    private final Segment<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public LruCache(int capacity) {
+        this(capacity, DEFAULT_CONCURRENCY);
+    }
+
+    public LruCache(int capacity, int concurrency) {
+        this(capacity, Long.MAX_VALUE, concurrency, null);
+    }
+
+    /**
+     * The weigher could be null if the cache is bounded by the number of
+     * entries only.
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int capacity, long maxWeight, int concurrency, Weigher<? super K, ? super V> weigher) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+        }
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Max weight should be positive: " + maxWeight);
+        }
+        // power of two segments, no more than entries
+        int count = 1;
+        while (count * 2 <= Math.min(capacity, concurrency)) {
+            count *= 2;
+        }
+        // generic arrays can't be created, the array only ever holds Segment<K, V>
+        segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(capacity / count + (i < capacity % count ? 1 : 0),
+                    maxWeight == Long.MAX_VALUE ? maxWeight : maxWeight / count, weigher);
+        }
+    }
+
+    private Segment<K, V> segment(Object key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * Returns the cached value or null if there is no value for the key.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segment(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    /**
+     * Caches the value, the least recently used entries of the key's segment
+     * are evicted to keep it within the bounds. An entry heavier than the
+     * segment's share of max weight isn't kept.
+     */
+    public void put(K key, V value) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.add(key, value);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the total weight of the cached entries.
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the number of get calls that found a value.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of get calls that found no value.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final long maxWeight;
+        private final Weigher<? super K, ? super V> weigher;
+        private long weight;
+
+        Segment(int capacity, long maxWeight, Weigher<? super K, ? super V> weigher) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.maxWeight = maxWeight;
+            this.weigher = weigher;
+        }
+
+        void add(K key, V value) {
+            long entryWeight = weigher != null ? weigher.weigh(key, value) : 0;
+            if (entryWeight > maxWeight) {
+                // the value wouldn't fit even alone, it isn't cached
+                // instead of evicting the whole segment
+                V stale = remove(key);
+                if (stale != null) {
+                    weight -= weigher.weigh(key, stale);
+                }
+                return;
+            }
+            V previous = put(key, value);
+            if (weigher != null) {
+                weight += entryWeight;
+                if (previous != null) {
+                    weight -= weigher.weigh(key, previous);
+                }
+            }
+            Iterator<Map.Entry<K, V>> eldest = entrySet().iterator();
+            while ((size() > capacity || weight > maxWeight) && eldest.hasNext()) {
+                Map.Entry<K, V> entry = eldest.next();
+                if (weigher != null) {
+                    weight -= weigher.weigh(entry.getKey(), entry.getValue());
+                }
+                eldest.remove();
+            }
+        }
+    }
+}
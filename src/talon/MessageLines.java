@@ -0,0 +1,240 @@
+package talon;
+
+import java.util.Arrays;
+
+/**
+ * Lines of a message body, indexed once and shared by all the stages
+ * processing the body.
+ * <p>
+ * Lines aren't copied: only their start and end offsets in the body are kept
+ * together with the body's delimiter and whether every line is blank
+ * (i.e. {@code line.trim().isEmpty()}).
+ */
+public class MessageLines {
+    private final CharSequence text;
+    private final String delimiter;
+    private final int[] starts;
+    private final int[] ends;
+    private final boolean[] blanks;
+    private final int size;
+
+    private MessageLines(CharSequence text, String delimiter, int[] starts, int[] ends, boolean[] blanks, int size) {
+        this.text = text;
+        this.delimiter = delimiter;
+        this.starts = starts;
+        this.ends = ends;
+        this.blanks = blanks;
+        this.size = size;
+    }
+
+    /**
+     * Indexes all lines of the text the same way {@code split("\r?\n")} does,
+     * i.e. trailing empty lines are dropped.
+     */
+    public static MessageLines of(CharSequence text) {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        boolean[] blanks = new boolean[16];
+        int size = 0;
+        int start = 0;
+        boolean blank = true;
+        boolean split = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '\n';
+            if (c == '\n') {
+                if (size == starts.length) {
+                    starts = Arrays.copyOf(starts, size * 2);
+                    ends = Arrays.copyOf(ends, size * 2);
+                    blanks = Arrays.copyOf(blanks, size * 2);
+                }
+                int end = i;
+                if (i < text.length()) {
+                    split = true;
+                    if (end > start && text.charAt(end - 1) == '\r') {
+                        end--;
+                    }
+                }
+                starts[size] = start;
+                ends[size] = end;
+                blanks[size] = blank;
+                size++;
+                start = i + 1;
+                blank = true;
+            } else if (c > ' ') {
+                blank = false;
+            }
+        }
+        if (split) {
+            while (size > 0 && starts[size - 1] == ends[size - 1]) {
+                size--;
+            }
+        }
+        return new MessageLines(text, Utils.getDelimiter(text), starts, ends, blanks, size);
+    }
+
+    /**
+     * Indexes the lines, they are joined with line feeds.
+     */
+    public static MessageLines of(String[] lines) {
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[lines.length];
+        int[] ends = new int[lines.length];
+        boolean[] blanks = new boolean[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            starts[i] = text.length();
+            text.append(lines[i]);
+            ends[i] = text.length();
+            blanks[i] = lines[i].trim().isEmpty();
+            text.append('\n');
+        }
+        return new MessageLines(text, "\n", starts, ends, blanks, lines.length);
+    }
+
+    /**
+     * Indexes only the last lines of the text holding the given number of
+     * non blank lines, or all the lines if there are fewer of them. Lines
+     * are read from the end, so the rest of the text isn't scanned.
+     * <p>
+     * Unlike {@link #of(CharSequence)} trailing empty lines are kept.
+     */
+    public static MessageLines tail(CharSequence text, int nonBlankCount) {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        boolean[] blanks = new boolean[16];
+        int size = 0;
+        int nonBlank = 0;
+        ReverseLineReader reader = new ReverseLineReader(text);
+        while (nonBlank < nonBlankCount && reader.previous()) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                blanks = Arrays.copyOf(blanks, size * 2);
+            }
+            starts[size] = reader.start();
+            ends[size] = reader.end();
+            blanks[size] = reader.isBlank();
+            if (!blanks[size]) {
+                nonBlank++;
+            }
+            size++;
+        }
+        // lines were read bottom up
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int start = starts[i];
+            starts[i] = starts[j];
+            starts[j] = start;
+            int end = ends[i];
+            ends[i] = ends[j];
+            ends[j] = end;
+            boolean blank = blanks[i];
+            blanks[i] = blanks[j];
+            blanks[j] = blank;
+        }
+        return new MessageLines(text, Utils.getDelimiter(text), starts, ends, blanks, size);
+    }
+
+    /**
+     * Returns the indexed text.
+     */
+    public CharSequence text() {
+        return text;
+    }
+
+    /**
+     * Returns the first line break of the text, see {@link Utils#getDelimiter(CharSequence)}.
+     */
+    public String delimiter() {
+        return delimiter;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the offset of the line's first character in the text.
+     */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Returns the offset after the line's last character in the text,
+     * the line break isn't included.
+     */
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public boolean isBlank(int i) {
+        return blanks[i];
+    }
+
+    public String line(int i) {
+        return text.subSequence(starts[i], ends[i]).toString();
+    }
+
+    /**
+     * Returns the line without leading and trailing whitespaces,
+     * i.e. {@code line(i).trim()}.
+     */
+    public String trimmed(int i) {
+        int start = starts[i];
+        int end = ends[i];
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the length of the trimmed line, i.e. {@code line(i).trim().length()}.
+     */
+    public int trimmedLength(int i) {
+        int start = starts[i];
+        int end = ends[i];
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end - start;
+    }
+
+    /**
+     * Returns the lines from (inclusive) and to (exclusive) joined with the delimiter.
+     */
+    public String join(int from, int to, String delimiter) {
+        return appendTo(new StringBuilder(), from, to, delimiter).toString();
+    }
+
+    /**
+     * Appends the lines from (inclusive) and to (exclusive) joined with the delimiter.
+     */
+    public StringBuilder appendTo(StringBuilder sb, int from, int to, String delimiter) {
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sb.append(delimiter);
+            }
+            sb.append(text, starts[i], ends[i]);
+        }
+        return sb;
+    }
+
+    /**
+     * Returns true if every line but the last is followed by a single line feed,
+     * i.e. the text looks the same as the lines joined with line feeds.
+     */
+    public boolean isLineFeedJoined() {
+        for (int i = 0; i + 1 < size; i++) {
+            if (starts[i + 1] - ends[i] != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+package talon;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches a set of patterns at once: the patterns are tried in order at
+ * the start of a text region and the first one that matches wins.
+ * <p>
+ * The patterns are combined into a single anchored alternation, so the
+ * region is scanned once and a region that can't start with any of the
+ * patterns is rejected after a few characters instead of being searched
+ * by every pattern in turn.
+ */
+public class PatternSet {
+    private final Pattern pattern;
+    // combined pattern group wrapping each of the patterns
+    private final int[] groups;
+
+    public PatternSet(Pattern... patterns) {
+        StringBuilder sb = new StringBuilder();
+        groups = new int[patterns.length];
+        int group = 1;
+        for (int i = 0; i < patterns.length; i++) {
+            if (i > 0)
+                sb.append('|');
+            groups[i] = group;
+            sb.append('(').append(embedFlags(patterns[i])).append(patterns[i].pattern()).append("))");
+            group += 1 + patterns[i].matcher("").groupCount();
+        }
+        this.pattern = Pattern.compile(sb.toString());
+    }
+
+    private static String embedFlags(Pattern pattern) {
+        StringBuilder flags = new StringBuilder("(?");
+        if ((pattern.flags() & Pattern.CASE_INSENSITIVE) != 0)
+            flags.append('i');
+        if ((pattern.flags() & Pattern.UNICODE_CASE) != 0)
+            flags.append('u');
+        if ((pattern.flags() & Pattern.MULTILINE) != 0)
+            flags.append('m');
+        if ((pattern.flags() & Pattern.DOTALL) != 0)
+            flags.append('s');
+        if ((pattern.flags() & Pattern.COMMENTS) != 0)
+            flags.append('x');
+        return flags.append(':').toString();
+    }
+
+    public Matcher matcher(CharSequence text) {
+        return new Matcher(pattern.matcher(text));
+    }
+
+    public class Matcher {
+        private final java.util.regex.Matcher matcher;
+
+        private Matcher(java.util.regex.Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        /**
+         * Matches the patterns against the start of the text region.
+         * <p>
+         * Returns the index of the first pattern that matches
+         * or -1 if none of them does.
+         */
+        public int lookingAt(int start, int end) {
+            matcher.region(start, end);
+            if (matcher.lookingAt()) {
+                for (int i = 0; i < groups.length; i++) {
+                    if (matcher.start(groups[i]) >= 0) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        public int start() {
+            return matcher.start();
+        }
+
+        public int end() {
+            return matcher.end();
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package talon;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -14,7 +18,9 @@ public class Quotation {
     public static final Pattern RE_FWD = Pattern.compile("^[-]+[ ]*Forwarded message[ ]*[-]+$", Pattern.CASE_INSENSITIVE);
 
     public static final Pattern RE_ON_DATE_SMB_WROTE =
-            Pattern.compile(String.format("(-*[ ]?(%1$s)[ ].*(%2$s)(.*%n)\\{0,2}.*(%3$s):?-*)",
+            // lines are matched possessively so that a failed attempt
+            // backtracks only over the number of lines, not across them
+            Pattern.compile(String.format("(-*[ ]?(%1$s)[ ](%2$s)(.*+\r?\n){0,2}.*(%3$s):?-*)",
                     // Beginning of the line
                     // English
                     "On|" +
@@ -24,7 +30,8 @@ public class Quotation {
                             "W dniu|" +
                             // Dutch
                             "Op",
-                    // Date and sender separator
+                    // Date and sender separator, it's optional so the date
+                    // and the sender are matched by the lines following it
                     // most languages separate date and sender address by comma
                     ",|" +
                             // polish date and sender address separator
@@ -39,7 +46,8 @@ public class Quotation {
                             "schreef|verzond|geschreven"));
 
     public static final Pattern RE_ON_DATE_WROTE_SMB = Pattern.compile(
-            String.format("(-*[ ]?(%1$s)[ ].*(.*%n){0,2}.*(%2$s)[ ].*:)",
+            // the first ending word is enough, the match ends at the last colon anyway
+            String.format("(-*[ ]?(%1$s)[ ](.*+\r?\n){0,2}(?>.*?(%2$s)[ ]).*:)",
                     // Beginning of the line
                     "Op",
                     // Ending of the line
@@ -47,10 +55,19 @@ public class Quotation {
                     "schreef|verzond|geschreven"));
 
 
+    /**
+     * Quotation border: splitter line or a number of quotation marker lines.
+     * <p>
+     * Markers are matched with {@link #findQuotation(CharSequence)} which
+     * doesn't backtrack.
+     */
     public static final Pattern RE_QUOTATION = Pattern.compile(
-            // quotation border: splitter line or a number of quotation marker lines
             "((s|(me*){2,}).*me*)[te]*$");
 
+    /**
+     * Markers are matched with {@link #findEmptyQuotation(CharSequence)}
+     * which doesn't overflow the stack on long runs of markers.
+     */
     public static final Pattern RE_EMPTY_QUOTATION = Pattern.compile(
             "(s|(me*){2,})e*");
 
@@ -79,6 +96,43 @@ public class Quotation {
             Pattern.compile("\\S{3,10}, \\d\\d? \\S{3,10} 20\\d\\d,? \\d\\d?:\\d\\d(:\\d\\d)?( \\S+){3,6}@\\S+:")
     };
 
+    static final PatternSet SPLITTERS = new PatternSet(SPLITTER_PATTERNS);
+
+    /**
+     * Words one of which any of SPLITTER_PATTERNS requires.
+     */
+    static final String[] SPLITTER_KEYWORDS;
+
+    static {
+        List<String> keywords = new ArrayList<>(Arrays.asList(
+                // RE_ORIGINAL_MESSAGE
+                "Original Message", "Reply Message", "Ursprüngliche Nachricht", "Antwort Nachricht",
+                "Oprindelig meddelelse",
+                // date followed by email and date with sender's email followed by colon
+                "@",
+                // RE_ON_DATE_SMB_WROTE and RE_ON_DATE_WROTE_SMB
+                "wrote", "sent", "a écrit", "napisał", "schreef", "verzond", "geschreven"));
+        // RE_FROM_COLON_OR_DATE_COLON, the colon could be preceded by a whitespace
+        for (String name : new String[]{"From", "Van", "De", "Von", "Fra", "Date", "Datum", "Envoyé"}) {
+            keywords.add(name + ":");
+            for (char whitespace : " \t\n\u000B\f\r".toCharArray()) {
+                keywords.add(name + whitespace + ":");
+            }
+        }
+        SPLITTER_KEYWORDS = keywords.toArray(new String[keywords.size()]);
+    }
+
+    /**
+     * Words RE_FWD requires.
+     */
+    static final String[] FORWARD_KEYWORDS = new String[]{"Forwarded message"};
+
+    private static final int SPLITTER_KEYWORD = 1;
+
+    private static final int FORWARD_KEYWORD = 2;
+
+    private static final KeywordMatcher KEYWORDS = new KeywordMatcher(SPLITTER_KEYWORDS, FORWARD_KEYWORDS);
+
     public static final Pattern RE_LINK = Pattern.compile("<(http://[^>]*)>");
 
     public static final Pattern RE_NORMALIZED_LINK = Pattern.compile("@@(http://[^>@]*)@@");
@@ -93,21 +147,302 @@ public class Quotation {
 
     public static final Pattern NO_QUOT_LINE = Pattern.compile("^[^>].*[\\S].*");
 
+    private static final Pattern RE_QUOTATION_MARKERS = Pattern.compile("(me*){3}");
+
+    private static final Pattern RE_FORWARD_MARKERS = Pattern.compile("[te]*f");
+
     /**
      * Extracts a non quoted message from provided plain text.
      */
-    public static String extractFromPlain(String body) {
-        String strippedText = body;
+    public static String extractFromPlain(CharSequence body) {
+        return extract(body, Deadline.NONE, null);
+    }
+
+    /**
+     * Extracts a non quoted message from provided plain text of any length.
+     * <p>
+     * Unlike {@link #extractFromPlain(CharSequence)} messages longer than
+     * MAX_LINES_COUNT lines are processed too, their lines are marked
+     * in parallel on the pool.
+     */
+    public static String extractFromPlain(CharSequence body, ForkJoinPool pool) {
+        return extract(body, Deadline.NONE, pool);
+    }
+
+    /**
+     * Extracts a non quoted message from provided plain text giving up
+     * once the deadline expires.
+     * <p>
+     * The deadline is checked while the patterns are matched and between
+     * the stages. If it expires, the body is returned as it is and the
+     * result is marked as timed out.
+     */
+    public static ExtractedReply extractFromPlain(CharSequence body, Deadline deadline) {
+        try {
+            return new ExtractedReply(extract(body, deadline, null), false);
+        } catch (DeadlineExceededException e) {
+            return new ExtractedReply(body.toString(), true);
+        }
+    }
+
+    /**
+     * Messages longer than MAX_LINES_COUNT lines are processed only if the pool isn't null.
+     */
+    private static String extract(CharSequence body, Deadline deadline, ForkJoinPool pool) {
         String delimiter = Utils.getDelimiter(body);
-        body = preprocess(body, delimiter);
-        String[] lines = body.split("\r?\n");
-        // don't process too long messages
-        if (lines.length > MAX_LINES_COUNT) {
-            return strippedText;
+        String preprocessed = preprocess(body, delimiter, "text/plain", deadline);
+        deadline.check();
+        MessageLines lines = MessageLines.of(preprocessed);
+        int[] quotation = findQuotationLines(lines, deadline, pool);
+        if (quotation == null) {
+            // don't process too long messages
+            return body.toString();
+        }
+        deadline.check();
+        return join(lines, quotation, delimiter);
+    }
+
+    /**
+     * Extracts a non quoted message from provided plain text of a message
+     * of the conversation, then adds the message to the conversation.
+     * <p>
+     * Lines at the end of the message equal to the first lines of a message
+     * added before are its quoted history if they start with a quotation
+     * marker or follow a splitter. They are marked as quotation without
+     * searching for splitters, only the lines above them are. So the
+     * splitter search takes time proportional to the new text of the message
+     * and messages longer than MAX_LINES_COUNT lines are processed if their
+     * new text is shorter. Otherwise the message is processed the same way
+     * {@link #extractFromPlain(CharSequence)} does.
+     */
+    public static String extractFromPlain(CharSequence body, Conversation conversation) {
+        String delimiter = Utils.getDelimiter(body);
+        String preprocessed = preprocess(body, delimiter, "text/plain", Deadline.NONE);
+        MessageLines lines = MessageLines.of(preprocessed);
+        int[] quotation = findQuotationLines(lines, conversation);
+        conversation.add(lines);
+        if (quotation == null) {
+            // don't process too long messages
+            return body.toString();
+        }
+        return join(lines, quotation, delimiter);
+    }
+
+    /**
+     * Concatenates the lines around the quotation, changes links back and strips the text.
+     */
+    private static String join(MessageLines lines, int[] quotation, String delimiter) {
+        StringBuilder text = lines.appendTo(new StringBuilder(), 0, quotation[0], delimiter);
+        if (quotation[0] > 0 && quotation[1] < lines.size()) {
+            text.append(delimiter);
+        }
+        return postprocess(lines.appendTo(text, quotation[1], lines.size(), delimiter).toString());
+    }
+
+    /**
+     * Returns the range of quotation lines to cut out the same way
+     * {@link #findQuotationLines(MessageLines, Deadline, ForkJoinPool)} does,
+     * the lines of the conversation's quoted history are marked directly.
+     */
+    private static int[] findQuotationLines(MessageLines lines, Conversation conversation) {
+        int known = conversation.findKnownLines(lines);
+        if (known > 0 && known <= MAX_LINES_COUNT) {
+            LineMarker marker = new LineMarker(lines, Deadline.NONE, true);
+            char[] markers = new char[marker.size()];
+            int next = marker.mark(0, known, markers, 0, null);
+            // the known lines could be the text of the message itself, e.g.
+            // the same greeting, unless they're quoted or follow a splitter
+            int last = next - 1;
+            while (last >= 0 && markers[last] == 'e') {
+                last--;
+            }
+            if (marker.isQuote(known) || last >= 0 && markers[last] == 's') {
+                for (int i = next; i < markers.length; i++) {
+                    markers[i] = marker.isBlank(i) ? 'e' : 'm';
+                }
+                return processMarkedLines(lines, markers);
+            }
+        }
+        return findQuotationLines(lines, Deadline.NONE, null);
+    }
+
+    /**
+     * Returns the range of quotation lines to cut out as {start, end},
+     * null if the message is too long to be processed.
+     */
+    private static int[] findQuotationLines(MessageLines lines, Deadline deadline, ForkJoinPool pool) {
+        if (lines.size() <= MAX_LINES_COUNT) {
+            return findQuotationLines(lines, deadline);
+        } else if (pool != null) {
+            return processMarkedLines(lines, markMessageLines(lines, pool));
+        }
+        return null;
+    }
+
+    /**
+     * Finds the non quoted message the same way {@link #extractFromPlain(CharSequence)}
+     * does, but returns where its parts are in the body instead of copying them.
+     * <p>
+     * The reply is the text above the quotation and the rest is the text
+     * below it, both spans are stripped. The text isn't changed: links aren't
+     * normalized and line breaks aren't replaced by the delimiter.
+     */
+    public static ReplySpans extractSpans(CharSequence body) {
+        String delimiter = Utils.getDelimiter(body);
+        String preprocessed = preprocess(body, delimiter, "text/plain", Deadline.NONE);
+        MessageLines lines = MessageLines.of(preprocessed);
+        int[] quotation = findQuotationLines(lines, Deadline.NONE, null);
+        if (quotation == null || quotation[0] == quotation[1]) {
+            // too long messages are returned as they are
+            Span reply = quotation == null ? Span.of(body) : Span.of(body).trim();
+            Span end = Span.of(body, reply.getEnd(), reply.getEnd());
+            return new ReplySpans(reply, end, end);
+        }
+        int[] offsets = new int[]{lines.start(quotation[0]),
+                quotation[1] < lines.size() ? lines.start(quotation[1]) : preprocessed.length()};
+        toOriginalOffsets(body, preprocessed, delimiter, offsets);
+        return new ReplySpans(Span.of(body, 0, offsets[0]).trim(), Span.of(body, offsets[0], offsets[1]).trim(),
+                Span.of(body, offsets[1], body.length()).trim());
+    }
+
+    /**
+     * Replaces the sorted offsets in the preprocessed body with the offsets in the body.
+     * <p>
+     * Both texts are read side by side, they differ only where preprocessing
+     * changed the body: the link brackets replaced with "@@" and the delimiters
+     * inserted before splitters. Offsets within a change are moved to its start.
+     */
+    private static void toOriginalOffsets(CharSequence body, String preprocessed, String delimiter, int[] offsets) {
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < offsets.length; k++) {
+            while (j < offsets[k]) {
+                if (i < body.length() && body.charAt(i) == preprocessed.charAt(j)) {
+                    i++;
+                    j++;
+                } else if (i < body.length() && (body.charAt(i) == '<' || body.charAt(i) == '>')) {
+                    // link bracket, offsets[k] could be within "@@"
+                    i++;
+                    j += 2;
+                } else {
+                    j += delimiter.length();
+                }
+            }
+            offsets[k] = i;
+        }
+    }
+
+    /**
+     * Parts of the message body found by {@link #extractSpans(CharSequence)}.
+     */
+    public static class ReplySpans {
+        final Span reply;
+        final Span quotation;
+        final Span rest;
+
+        public ReplySpans(Span reply, Span quotation, Span rest) {
+            this.reply = reply;
+            this.quotation = quotation;
+            this.rest = rest;
+        }
+
+        /**
+         * Returns the text above the quotation, the whole body if there
+         * is no quotation.
+         */
+        public Span getReply() {
+            return reply;
+        }
+
+        /**
+         * Returns the quotation, an empty span after the reply if there is none.
+         */
+        public Span getQuotation() {
+            return quotation;
+        }
+
+        /**
+         * Returns the text below the quotation, usually empty.
+         */
+        public Span getRest() {
+            return rest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ReplySpans that = (ReplySpans) o;
+
+            if (!reply.equals(that.reply)) return false;
+            if (!quotation.equals(that.quotation)) return false;
+            return rest.equals(that.rest);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = reply.hashCode();
+            result = 31 * result + quotation.hashCode();
+            result = 31 * result + rest.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "ReplySpans{" +
+                    "reply=[" + reply.getStart() + ", " + reply.getEnd() + ")" +
+                    ", quotation=[" + quotation.getStart() + ", " + quotation.getEnd() + ")" +
+                    ", rest=[" + rest.getStart() + ", " + rest.getEnd() + ")" +
+                    '}';
+        }
+    }
+
+    public static class ExtractedReply {
+        final String text;
+        final boolean timedOut;
+
+        public ExtractedReply(String text, boolean timedOut) {
+            this.text = text;
+            this.timedOut = timedOut;
+        }
+
+        /**
+         * Returns the message without quotations, or the whole body if timed out.
+         */
+        public String getText() {
+            return text;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ExtractedReply that = (ExtractedReply) o;
+
+            if (timedOut != that.timedOut) return false;
+            return text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + (timedOut ? 1 : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "ExtractedReply{" +
+                    "text='" + text + '\'' +
+                    ", timedOut=" + timedOut +
+                    '}';
         }
-        char[] markers = markMessageLines(lines);
-        // TODO
-        return "";
     }
 
     /**
@@ -122,50 +457,489 @@ public class Quotation {
      * </ul>
      */
     static char[] markMessageLines(String[] lines) {
-        char[] markers = new char[lines.length];
-        int i = 0;
-        while (i < lines.length) {
-            Matcher quoteMatcher = QUOT_PATTERN.matcher(lines[i]);
-            Matcher reFwdMatcher = RE_FWD.matcher(lines[i]);
-            if (lines[i].trim().length() == 0) {
-                markers[i] = 'e'; // empty line
-            } else if (quoteMatcher.find() && quoteMatcher.start() == 0) {
-                markers[i] = 'm'; // line with quotation marker
-            } else if (reFwdMatcher.find() && reFwdMatcher.start() == 0) {
-                markers[i] = 'f'; // # ---- Forwarded message ----
+        return markMessageLines(MessageLines.of(lines));
+    }
+
+    static char[] markMessageLines(MessageLines lines) {
+        return markMessageLines(lines, Deadline.NONE);
+    }
+
+    static char[] markMessageLines(MessageLines lines, Deadline deadline) {
+        LineMarker marker = new LineMarker(lines, deadline, false);
+        char[] markers = new char[marker.size()];
+        marker.mark(0, markers.length, markers, 0, null);
+        return markers;
+    }
+
+    /**
+     * Marks message lines the same way {@link #markMessageLines(MessageLines)}
+     * does, splitting them into chunks of MAX_LINES_COUNT lines marked
+     * in parallel on the pool.
+     * <p>
+     * Marking of a chunk starts SPLITTER_MAX_LINES lines before it, so it
+     * usually gets in step with marking of the previous chunk: if the line
+     * the previous chunk stops at was marked by the chunk too, the rest of
+     * its markers are the same as if all the lines were marked sequentially.
+     * Otherwise the chunk is marked again starting from that line.
+     */
+    static char[] markMessageLines(MessageLines lines, ForkJoinPool pool) {
+        LineMarker marker = new LineMarker(lines, Deadline.NONE, false);
+        final List<MarkChunk> chunks = new ArrayList<>();
+        for (int from = 0; from < marker.size(); from += MAX_LINES_COUNT) {
+            chunks.add(new MarkChunk(marker, from, Math.min(marker.size(), from + MAX_LINES_COUNT)));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+        char[] markers = new char[marker.size()];
+        // the line marking stopped at, the previous lines are marked
+        int next = 0;
+        for (MarkChunk chunk : chunks) {
+            if (next >= chunk.to) {
+                // the last chunk is covered by a splitter started before it
+                continue;
+            }
+            if (chunk.isStart(next)) {
+                System.arraycopy(chunk.markers, next - chunk.offset, markers, next, chunk.end - next);
+                next = chunk.end;
             } else {
-                // in case splitter is spread across several lines
-                Matcher splitter = isSplitter(Utils.join(Arrays.asList(lines).subList(i, Math.min(lines.length, i + MAX_LINES_COUNT)).toArray(new String[0]), "\n"));
-                if (splitter != null) {
-                    // append as many splitter markers as lines in splitter
-                    String[] splitterLines = splitter.group().split("\r?\n");
-                    for (int j = 0; j < splitterLines.length; j++) {
-                        markers[i + j] = 's';
+                next = marker.mark(next, chunk.to, markers, 0, null);
+            }
+        }
+        return markers;
+    }
+
+    /**
+     * Returns the range of quotation lines to cut out as {start, end}, the same
+     * as {@code processMarkedLines(lines, markMessageLines(lines))}.
+     * <p>
+     * Lines are marked top-down and marking stops as soon as the rest of the
+     * lines can't change the result:
+     * <ul>
+     * <li>the rest are empty lines and lines with quotation markers, their
+     * markers are known without searching for splitters
+     * <li>a splitter followed by text is found and there are no lines with
+     * quotation markers left, so there can't be inline replies below and
+     * the rest are cut out
+     * </ul>
+     * Replies on top of a long quoted conversation are marked up to the
+     * conversation only.
+     */
+    static int[] findQuotationLines(MessageLines lines, Deadline deadline) {
+        LineMarker marker = new LineMarker(lines, deadline, true);
+        int size = marker.size();
+        // the last line which is neither empty nor starts with a quotation marker,
+        // and the last line starting with a quotation marker
+        int lastText = -1;
+        int lastQuote = -1;
+        for (int i = size - 1; i >= 0 && (lastText < 0 || lastQuote < 0); i--) {
+            if (marker.isQuote(i)) {
+                lastQuote = Math.max(lastQuote, i);
+            } else if (!marker.isBlank(i)) {
+                lastText = Math.max(lastText, i);
+            }
+        }
+
+        char[] markers = new char[size];
+        int marked = 0;
+        // the first line of the current run of splitter and empty lines,
+        // the first run followed by a text line is the splitter quotation
+        int splitterRun = -1;
+        int splitterQuotation = -1;
+        while (marked <= lastText) {
+            if (splitterQuotation >= 0 && marked > lastQuote) {
+                return processMarkedLines(lines, Arrays.copyOf(markers, marked));
+            }
+            // marking can't stop before the last text line or the last quotation marker line
+            int next = marker.mark(marked, Math.max(marked + 1, Math.min(lastText, lastQuote) + 1), markers, 0, null);
+            for (; marked < next; marked++) {
+                char c = markers[marked];
+                if (c == 's') {
+                    if (splitterRun < 0) {
+                        splitterRun = marked;
+                    }
+                } else if (c == 't' || c == 'f') {
+                    if (splitterRun >= 0 && splitterQuotation < 0) {
+                        splitterQuotation = splitterRun;
                     }
-                    // skip splitter lines
-                    i += splitterLines.length - 1;
+                    splitterRun = -1;
+                } else if (c == 'm') {
+                    splitterRun = -1;
+                }
+            }
+        }
+        for (; marked < size; marked++) {
+            markers[marked] = marker.isBlank(marked) ? 'e' : 'm';
+        }
+        return processMarkedLines(lines, markers);
+    }
+
+    /**
+     * Marks message lines, a line's marker depends only on the line itself
+     * and SPLITTER_MAX_LINES - 1 lines following it.
+     */
+    private static class LineMarker {
+        private final MessageLines lines;
+        private final Deadline deadline;
+        // keywords are found in one pass, only the lines having splitter keywords
+        // within SPLITTER_MAX_LINES lines starting from them could be splitters
+        private final CharSequence keywordsText;
+        private final int[] keywords;
+        // number of lines whose keywords are found
+        private int keywordLines;
+        private int keywordState;
+        private int keywordPosition;
+
+        /**
+         * Keywords of all the lines are found at once unless lazy is true,
+         * lazy marker shouldn't be shared between threads.
+         */
+        LineMarker(MessageLines lines, Deadline deadline, boolean lazy) {
+            // splitters are searched within a window of SPLITTER_MAX_LINES lines
+            // starting from the current one, lines should be separated by
+            // line feeds for the patterns spanning several lines
+            if (!lines.isLineFeedJoined()) {
+                StringBuilder text = new StringBuilder();
+                lines = MessageLines.of(lines.appendTo(text, 0, lines.size(), "\n").append('\n'));
+            }
+            this.lines = lines;
+            this.deadline = deadline;
+            keywordsText = deadline.guard(lines.text());
+            keywords = new int[lines.size()];
+            if (!lazy) {
+                matchKeywords(lines.size());
+            }
+        }
+
+        /**
+         * Finds keywords of the lines before the line to the same way
+         * {@link KeywordMatcher#matchLines(CharSequence, int)} does.
+         */
+        private void matchKeywords(int to) {
+            while (keywordLines < to) {
+                if (keywordPosition == keywordsText.length()) {
+                    keywordLines = keywords.length;
+                    break;
+                }
+                char c = keywordsText.charAt(keywordPosition++);
+                keywordState = KEYWORDS.next(keywordState, c);
+                keywords[keywordLines] |= KEYWORDS.flags(keywordState);
+                if (c == '\n') {
+                    keywordLines++;
+                }
+            }
+        }
+
+        private boolean hasForwardKeyword(int i) {
+            matchKeywords(i + 1);
+            return (keywords[i] & FORWARD_KEYWORD) != 0;
+        }
+
+        private boolean hasSplitterKeyword(int from, int to) {
+            matchKeywords(to);
+            for (int i = from; i < to; i++) {
+                if ((keywords[i] & SPLITTER_KEYWORD) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isBlank(int i) {
+            return lines.isBlank(i);
+        }
+
+        /**
+         * Returns true if the line starts with a quotation marker, the line
+         * is marked 'm' unless it's covered by a splitter.
+         */
+        boolean isQuote(int i) {
+            return lines.end(i) > lines.start(i) && lines.text().charAt(lines.start(i)) == '>';
+        }
+
+        int size() {
+            return lines.size();
+        }
+
+        /**
+         * Marks lines starting from the line from until the line to is reached,
+         * the marker of line i is stored at markers[i - offset]. The lines
+         * marking started at are flagged the same way in starts unless it's null.
+         * <p>
+         * Returns the line marking stopped at, it could be past the line to
+         * if the last splitter spans several lines.
+         */
+        int mark(int from, int to, char[] markers, int offset, boolean[] starts) {
+            CharSequence text = deadline.guard(lines.text());
+            int size = lines.size();
+            PatternSet.Matcher splitter = SPLITTERS.matcher(text);
+            Matcher quote = QUOT_PATTERN.matcher(text);
+            Matcher forward = RE_FWD.matcher(text);
+
+            int i = from;
+            while (i < to) {
+                if (starts != null) {
+                    starts[i - offset] = true;
+                }
+                if (lines.isBlank(i)) {
+                    markers[i - offset] = 'e'; // empty line
+                } else if (quote.region(lines.start(i), lines.end(i)).lookingAt()) {
+                    markers[i - offset] = 'm'; // line with quotation marker
+                } else if (hasForwardKeyword(i) && forward.region(lines.start(i), lines.end(i)).lookingAt()) {
+                    markers[i - offset] = 'f'; // # ---- Forwarded message ----
                 } else {
-                    // probably the line from the last message in the conversation
-                    markers[i] = 't';
+                    // in case splitter is spread across several lines
+                    // the window doesn't include the last line break
+                    int windowLines = Math.min(size, i + SPLITTER_MAX_LINES);
+                    int windowEnd = lines.end(windowLines - 1);
+                    if (hasSplitterKeyword(i, windowLines) && splitter.lookingAt(lines.start(i), windowEnd) >= 0) {
+                        // append as many splitter markers as lines in splitter
+                        int splitterLines = countLines(text, splitter.start(), splitter.end());
+                        for (int j = 0; j < splitterLines; j++) {
+                            markers[i + j - offset] = 's';
+                        }
+                        // skip splitter lines
+                        i += splitterLines - 1;
+                    } else {
+                        // probably the line from the last message in the conversation
+                        markers[i - offset] = 't';
+                    }
                 }
+                i++;
             }
-            i++;
+            return i;
         }
-        return markers;
     }
 
-    private static String[] processMarkedLines(String[] lines, char[] markers) {
+    /**
+     * Lines from (inclusive) to to (exclusive) marked starting
+     * SPLITTER_MAX_LINES lines before from.
+     */
+    private static class MarkChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final LineMarker marker;
+        final int to;
+        final int offset;
+        final char[] markers;
+        final boolean[] starts;
+        int end;
+
+        MarkChunk(LineMarker marker, int from, int to) {
+            this.marker = marker;
+            this.to = to;
+            this.offset = Math.max(0, from - SPLITTER_MAX_LINES);
+            // the last splitter could span SPLITTER_MAX_LINES lines
+            this.markers = new char[Math.min(marker.size(), to + SPLITTER_MAX_LINES) - offset];
+            this.starts = new boolean[markers.length];
+        }
+
+        @Override
+        protected void compute() {
+            end = marker.mark(offset, to, markers, offset, starts);
+        }
+
+        boolean isStart(int line) {
+            return starts[line - offset];
+        }
+    }
+
+    /**
+     * Returns the number of lines in the text region the same way
+     * splitting it by line breaks does i.e. trailing empty lines
+     * are not counted.
+     */
+    private static int countLines(CharSequence text, int start, int end) {
+        if (start == end) {
+            return 1;
+        }
+        while (end > start && text.charAt(end - 1) == '\n') {
+            end--;
+            if (end > start && text.charAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+        if (end == start) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Run regexes against message's marked lines to strip quotations.
+     * <p>
+     * Return the range of quotation lines to cut out as {start, end},
+     * the rest are the last message lines.
+     */
+    static int[] processMarkedLines(MessageLines lines, char[] markers) {
+        String markersString = new String(markers);
+        // if there are no splitter there should be no markers
+        if (markersString.indexOf('s') < 0 && !RE_QUOTATION_MARKERS.matcher(markersString).find()) {
+            markersString = markersString.replace('m', 't');
+        }
+        if (RE_FORWARD_MARKERS.matcher(markersString).lookingAt()) {
+            return new int[]{lines.size(), lines.size()};
+        }
+        // inlined reply
+        // overlapping entries are found e.g. for 'mtmtm' both 't' entries should be found
+        for (int inlineReply = findInlineReply(markersString, 0); inlineReply >= 0;
+             inlineReply = findInlineReply(markersString, inlineReply + 1)) {
+            // long links could break sequence of quotation lines but they shouldn't
+            // be considered an inline reply
+            boolean links = RE_PARENTHESIS_LINK.matcher(lines.line(inlineReply - 1)).find() ||
+                    RE_PARENTHESIS_LINK.matcher(lines.trimmed(inlineReply)).lookingAt();
+            if (!links) {
+                return new int[]{lines.size(), lines.size()};
+            }
+        }
+        // cut out text lines coming after splitter if there are no markers there
+        int splitterQuotation = findSplitterQuotation(markersString);
+        if (splitterQuotation >= 0) {
+            return new int[]{splitterQuotation, lines.size()};
+        }
+        // handle the case with markers
+        int[] quotation = findQuotation(markersString);
+        if (quotation == null) {
+            quotation = findEmptyQuotation(markersString);
+            if (quotation == null) {
+                return new int[]{lines.size(), lines.size()};
+            }
+        }
+        return quotation;
+    }
+
+    /**
+     * Returns the start of the first splitter followed by text lines,
+     * -1 if there is none.
+     * <p>
+     * The same as searching for "(se*)+((t|f)+e*)+", the pattern overflows
+     * the stack on long runs of splitter and empty lines.
+     */
+    static int findSplitterQuotation(CharSequence markers) {
+        for (int i = 0; i < markers.length(); i++) {
+            if (markers.charAt(i) != 's') {
+                continue;
+            }
+            int end = i;
+            while (end < markers.length() && (markers.charAt(end) == 's' || markers.charAt(end) == 'e')) {
+                end++;
+            }
+            if (end < markers.length() && (markers.charAt(end) == 't' || markers.charAt(end) == 'f')) {
+                return i;
+            }
+            // the splitters before end are followed by the same line
+            i = end;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the range of RE_EMPTY_QUOTATION group 1 as {start, end},
+     * null if the markers don't start with a match.
+     * <p>
+     * The quotation is the first splitter line or the run of quotation
+     * marker and empty lines containing two marker lines, either starting
+     * at the first line. A splitter below the text, e.g. a trailing
+     * "-----Original Message-----" line, isn't a quotation.
+     */
+    static int[] findEmptyQuotation(CharSequence markers) {
+        int n = markers.length();
+        if (n == 0) {
+            return null;
+        }
+        char marker = markers.charAt(0);
+        if (marker == 's') {
+            return new int[]{0, 1};
+        }
+        if (marker == 'm') {
+            int next = 1;
+            while (next < n && markers.charAt(next) == 'e') {
+                next++;
+            }
+            if (next < n && markers.charAt(next) == 'm') {
+                int end = next;
+                while (end < n && (markers.charAt(end) == 'm' || markers.charAt(end) == 'e')) {
+                    end++;
+                }
+                return new int[]{0, end};
+            }
+        }
+        return null;
     }
 
     /**
-     * Returns Matcher object if provided string is a splitter and
-     * None otherwise.
+     * Returns the index of the first inline reply line at or after from,
+     * -1 if there is none.
+     * <p>
+     * The same as searching for "(?&lt;=m)e*((?:t+e*)+)m" i.e. text and empty
+     * lines between two quotation marker lines, in a single pass.
      */
-    private static Matcher isSplitter(String line) {
-        for (Pattern pattern : SPLITTER_PATTERNS) {
-            Matcher matcher = pattern.matcher(line);
-            if (matcher.find() && matcher.start() == 0) {
-                return matcher;
+    static int findInlineReply(CharSequence markers, int from) {
+        for (int i = Math.max(from, 1); i < markers.length(); i++) {
+            if (markers.charAt(i - 1) != 'm') {
+                continue;
+            }
+            boolean text = false;
+            int end = i;
+            for (; end < markers.length() && (markers.charAt(end) == 't' || markers.charAt(end) == 'e'); end++) {
+                text |= markers.charAt(end) == 't';
+            }
+            if (text && end < markers.length() && markers.charAt(end) == 'm') {
+                return i;
+            }
+            // no quotation marker line before end
+            i = end;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the range of RE_QUOTATION group 1 as {start, end},
+     * null if there is no match.
+     * <p>
+     * The quotation starts at the first splitter line or the first quotation
+     * marker line followed by another one, and ends after the last quotation
+     * marker line and the empty lines following it. Only text and empty
+     * lines could follow the quotation.
+     */
+    static int[] findQuotation(CharSequence markers) {
+        int n = markers.length();
+        int last = n - 1;
+        while (last >= 0 && markers.charAt(last) != 'm') {
+            if (markers.charAt(last) != 't' && markers.charAt(last) != 'e') {
+                return null;
+            }
+            last--;
+        }
+        if (last < 0) {
+            return null;
+        }
+        int end = last + 1;
+        while (end < n && markers.charAt(end) == 'e') {
+            end++;
+        }
+        for (int i = 0; i < last; i++) {
+            char marker = markers.charAt(i);
+            if (marker == 's') {
+                return new int[]{i, end};
+            }
+            if (marker == 'm') {
+                int next = i + 1;
+                while (next < last && markers.charAt(next) == 'e') {
+                    next++;
+                }
+                if (next < last && markers.charAt(next) == 'm') {
+                    return new int[]{i, end};
+                }
             }
         }
         return null;
@@ -179,47 +953,81 @@ public class Quotation {
      * Normalize links i.e. replace '<', '>' wrapping the link with some symbols
      * so that '>' closing the link couldn't be mistakenly taken for quotation
      * marker.
+     * <p>
+     * Links on lines starting with a quotation marker are left as they are.
      */
-    private static class LinkWrapper implements CallbackMatcher.ReplaceCallback {
-        private String body;
-
-        public LinkWrapper(String body) {
-            this.body = body;
-        }
-
+    private static final CallbackMatcher.AppendCallback LINK_WRAPPER = new CallbackMatcher.AppendCallback() {
         @Override
-        public String replaceMatch(MatchResult link) {
-            int newlineIndex = body.substring(link.start(), body.length()).lastIndexOf("\n");
-            if (body.charAt(newlineIndex + 1) == '>') {
-                return link.group();
+        public void appendMatch(CharSequence body, MatchResult link, int lineStart, StringBuilder output) {
+            if (body.charAt(lineStart) == '>') {
+                output.append(body, link.start(), link.end());
             } else {
-                return String.format("@@%s@@", link.group(1));
+                output.append("@@").append(body, link.start(1), link.end(1)).append("@@");
             }
         }
-    }
+    };
 
     /**
      * Wraps splitter with new line
      */
-    private static class SplitterWrapper implements CallbackMatcher.ReplaceCallback {
-        private String body;
-        private String delimiter;
+    private static class SplitterWrapper implements CallbackMatcher.AppendCallback {
+        private final String delimiter;
 
-        public SplitterWrapper(String body, String delimiter) {
-            this.body = body;
+        public SplitterWrapper(String delimiter) {
             this.delimiter = delimiter;
         }
 
         @Override
-        public String replaceMatch(MatchResult splitter) {
-            if (splitter.start() > 0 && body.charAt(splitter.start() - 1) != '\n') {
-                return String.format("%s%s", delimiter, splitter.group());
-            } else {
-                return splitter.group();
+        public void appendMatch(CharSequence body, MatchResult splitter, int lineStart, StringBuilder output) {
+            if (splitter.start() > lineStart) {
+                output.append(delimiter);
             }
+            output.append(body, splitter.start(), splitter.end());
         }
     }
 
+    private static final CallbackMatcher LINKS = new CallbackMatcher(RE_LINK);
+
+    /**
+     * Beginnings of RE_ON_DATE_SMB_WROTE followed by a space.
+     */
+    private static final String[] ON_DATE_BEGINNINGS = new String[]{"On ", "Le ", "W dniu ", "Op "};
+
+    /**
+     * Tries RE_ON_DATE_SMB_WROTE only once per line: at the first beginning
+     * word of the line. If it doesn't match there, it can't match at the
+     * next beginning words of the line either since they leave less text
+     * for the ending word.
+     */
+    private static final CallbackMatcher ON_DATE_SMB_WROTE = new CallbackMatcher(RE_ON_DATE_SMB_WROTE) {
+        @Override
+        protected boolean find(Matcher matcher, CharSequence input, int from) {
+            boolean tried = false;
+            for (int i = from; i < input.length(); i++) {
+                char c = input.charAt(i);
+                if (isLineTerminator(c)) {
+                    tried = false;
+                } else if (!tried && isOnDateBeginning(c) && startsWithAny(input, i, ON_DATE_BEGINNINGS)) {
+                    tried = true;
+                    // the match starts at the dashes and the space preceding the word
+                    int start = i;
+                    if (start > from && input.charAt(start - 1) == ' ') {
+                        start--;
+                    }
+                    while (start > from && input.charAt(start - 1) == '-') {
+                        start--;
+                    }
+                    if (matcher.region(start, input.length()).lookingAt()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    };
+
+    private static final CallbackMatcher NORMALIZED_LINKS = new CallbackMatcher(RE_NORMALIZED_LINK);
+
     /**
      * Prepares msg_body for being stripped.
      * <p>
@@ -228,11 +1036,50 @@ public class Quotation {
      * line (done only for 'On <date> <person> wrote:' pattern).
      */
     static String preprocess(String body, String delimiter, String contentType) {
-        body = new CallbackMatcher(RE_LINK).replaceMatches(body, new LinkWrapper(body));
+        return preprocess(body, delimiter, contentType, Deadline.NONE);
+    }
+
+    private static String preprocess(CharSequence body, String delimiter, String contentType, Deadline deadline) {
+        String text = LINKS.replaceMatches(deadline.guard(body), LINK_WRAPPER);
         if (Objects.equals(contentType, "text/plain")) {
-            body = new CallbackMatcher(RE_ON_DATE_SMB_WROTE).replaceMatches(body, new LinkWrapper(body));
+            text = ON_DATE_SMB_WROTE.replaceMatches(deadline.guard(text), new SplitterWrapper(delimiter));
+        }
+        return text;
+    }
+
+    /**
+     * Returns true if one of ON_DATE_BEGINNINGS starts with the character.
+     */
+    private static boolean isOnDateBeginning(char c) {
+        return c == 'O' || c == 'L' || c == 'W';
+    }
+
+    private static boolean startsWithAny(CharSequence text, int start, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (startsWith(text, start, prefix)) {
+                return true;
+            }
         }
-        return body;
+        return false;
+    }
+
+    private static boolean startsWith(CharSequence text, int start, String prefix) {
+        if (start + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if '.' doesn't match the character.
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
     }
 
     /**
@@ -241,10 +1088,10 @@ public class Quotation {
      * Replace link brackets back to '<' and '>'.
      */
     static String postprocess(String body) {
-        return new CallbackMatcher(RE_NORMALIZED_LINK).replaceMatches(body, new CallbackMatcher.ReplaceCallback() {
+        return NORMALIZED_LINKS.replaceMatches(body, new CallbackMatcher.AppendCallback() {
             @Override
-            public String replaceMatch(MatchResult matchResult) {
-                return "<" + matchResult.group(1) + ">";
+            public void appendMatch(CharSequence body, MatchResult link, int lineStart, StringBuilder output) {
+                output.append('<').append(body, link.start(1), link.end(1)).append('>');
             }
         }).trim();
     }
@@ -0,0 +1,161 @@
+package talon;
+
+import talon.signature.learning.Extraction;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of quotation and signature extraction keyed by the 128-bit hash
+ * of everything they depend on: the body, the sender, the content type and
+ * the model's fingerprint. Identical bodies, e.g. a message sent to a
+ * mailing list, are processed once.
+ * <p>
+ * Hashes are seeded with random values chosen by every cache, so a body
+ * colliding with another message's can't be crafted in advance. Besides
+ * the key, a result is checked against the body length and a second,
+ * independently seeded hash before it's returned.
+ * <p>
+ * The cache is bounded by the number of results and by their approximate
+ * size in memory, the least recently used results are evicted. Entries
+ * are spread over independently locked segments, see {@link LruCache}.
+ */
+public class ResultCache {
+    private static final int CONCURRENCY = 16;
+
+    // approximate size of a result besides its characters
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final String QUOTATION = "quotation";
+    private static final String SIGNATURE = "signature";
+    private static final String MESSAGE = "message";
+
+    private static final LruCache.Weigher<Hash128, Entry> WEIGHER = new LruCache.Weigher<Hash128, Entry>() {
+        @Override
+        public long weigh(Hash128 key, Entry entry) {
+            if (entry.result instanceof ExtractedSignature) {
+                ExtractedSignature signature = (ExtractedSignature) entry.result;
+                return ENTRY_OVERHEAD + 2L * (signature.getText().length() + signature.getSignature().length());
+            }
+            return ENTRY_OVERHEAD + 2L * ((String) entry.result).length();
+        }
+    };
+
+    private final LruCache<Hash128, Entry> cache;
+    private final long seed;
+    private final long checkSeed;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Cached result along with the values it's checked against.
+     */
+    private static final class Entry {
+        final Object result;
+        final int length;
+        final long check;
+
+        Entry(Object result, int length, long check) {
+            this.result = result;
+            this.length = length;
+            this.check = check;
+        }
+    }
+
+    /**
+     * The cache holds at most capacity results taking at most maxBytes.
+     */
+    public ResultCache(int capacity, long maxBytes) {
+        cache = new LruCache<>(capacity, maxBytes, CONCURRENCY, WEIGHER);
+        SecureRandom random = new SecureRandom();
+        seed = random.nextLong();
+        checkSeed = random.nextLong();
+    }
+
+    /**
+     * See {@link Quotation#extractFromPlain(CharSequence)}.
+     */
+    public String extractFromPlain(CharSequence body) {
+        Hash128 key = hash(seed, QUOTATION, body, null, null, null);
+        long check = hash(checkSeed, QUOTATION, body, null, null, null).getLow();
+        String reply = (String) get(key, body.length(), check);
+        if (reply == null) {
+            reply = Quotation.extractFromPlain(body);
+            cache.put(key, new Entry(reply, body.length(), check));
+        }
+        return reply;
+    }
+
+    /**
+     * See {@link Extraction#extract(CharSequence, String, SignatureModel)}.
+     */
+    public ExtractedSignature extract(CharSequence body, String sender, SignatureModel model) {
+        Hash128 key = hash(seed, SIGNATURE, body, sender, null, model);
+        long check = hash(checkSeed, SIGNATURE, body, sender, null, model).getLow();
+        ExtractedSignature signature = (ExtractedSignature) get(key, body.length(), check);
+        if (signature == null) {
+            signature = Extraction.extract(body, sender, model);
+            cache.put(key, new Entry(signature, body.length(), check));
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the result of {@link Talon#process(Talon.Message)}, the
+     * message is processed by the talon on a miss.
+     */
+    ExtractedSignature process(Talon talon, Talon.Message message, SignatureModel model) {
+        Hash128 key = hash(seed, MESSAGE, message.body, message.sender, message.contentType, model);
+        long check = hash(checkSeed, MESSAGE, message.body, message.sender, message.contentType, model).getLow();
+        ExtractedSignature signature = (ExtractedSignature) get(key, message.body.length(), check);
+        if (signature == null) {
+            signature = talon.processUncached(message);
+            cache.put(key, new Entry(signature, message.body.length(), check));
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the cached result, null if there is none or it's cached for
+     * another body whose key collides.
+     */
+    private Object get(Hash128 key, int length, long check) {
+        Entry entry = cache.get(key);
+        if (entry != null && entry.length == length && entry.check == check) {
+            hits.increment();
+            return entry.result;
+        }
+        misses.increment();
+        return null;
+    }
+
+    private static Hash128 hash(long seed, String kind, CharSequence body, String sender, String contentType,
+                                SignatureModel model) {
+        Hash128.Hasher hasher = new Hash128.Hasher(seed).put(kind).put(body).put(sender).put(contentType);
+        if (model != null) {
+            hasher.put(model.fingerprint().getHigh()).put(model.fingerprint().getLow());
+        }
+        return hasher.hash();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the approximate size of the cached results in bytes.
+     */
+    public long bytes() {
+        return cache.weight();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
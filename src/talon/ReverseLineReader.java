@@ -0,0 +1,73 @@
+package talon;
+
+/**
+ * Walks the lines of a text backward, starting from the last line.
+ * <p>
+ * Lines are split the same way as with {@code split("\r?\n")}, except that
+ * trailing empty lines are reported too. Only the characters of the lines
+ * read so far are scanned, so reading the tail of a huge text costs the
+ * same as reading a short one.
+ */
+public class ReverseLineReader {
+    private final CharSequence text;
+    private int start;
+    private int end;
+
+    public ReverseLineReader(CharSequence text) {
+        this.text = text;
+        // past the end, as if the text was followed by a line terminator
+        this.start = text.length() + 1;
+    }
+
+    /**
+     * Moves to the previous line, returns false if the first line was already read.
+     */
+    public boolean previous() {
+        if (start == 0) {
+            return false;
+        }
+        int terminator = start - 1;
+        int i = terminator;
+        while (i > 0 && text.charAt(i - 1) != '\n') {
+            i--;
+        }
+        end = terminator;
+        if (terminator < text.length() && end > i && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        start = i;
+        return true;
+    }
+
+    /**
+     * Returns the index of the first character of the current line.
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * Returns the index after the last character of the current line,
+     * the line terminator isn't included.
+     */
+    public int end() {
+        return end;
+    }
+
+    public String line() {
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns true if the current line is empty or consists of whitespaces,
+     * i.e. {@code line().trim().isEmpty()}.
+     */
+    public boolean isBlank() {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,168 @@
+package talon;
+
+/**
+ * Range of characters of an input text, e.g. the signature of a message
+ * body.
+ * <p>
+ * The characters aren't copied: the span is a view of the input, its text
+ * is materialized only by {@link #toString()}. Offsets and line numbers are
+ * those of the whole input, lines are split by line feeds and counted from 0.
+ */
+public final class Span implements CharSequence {
+    private final CharSequence input;
+    private final int start;
+    private final int end;
+    // lines are counted on the first request, -1 until then
+    private int fromLine = -1;
+    private int toLine = -1;
+
+    private Span(CharSequence input, int start, int end) {
+        if (start < 0 || start > end || end > input.length()) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + input.length());
+        }
+        this.input = input;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns the span of the whole input.
+     */
+    public static Span of(CharSequence input) {
+        return new Span(input, 0, input.length());
+    }
+
+    public static Span of(CharSequence input, int start, int end) {
+        return new Span(input, start, end);
+    }
+
+    public CharSequence getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the offset of the first character in the input.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the offset after the last character in the input.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the line of the input the span starts on.
+     */
+    public int getFromLine() {
+        countLines();
+        return fromLine;
+    }
+
+    /**
+     * Returns the line after the last line of the input the span covers,
+     * equal to {@link #getFromLine()} if the span is empty.
+     */
+    public int getToLine() {
+        countLines();
+        return toLine;
+    }
+
+    private void countLines() {
+        if (fromLine >= 0) {
+            return;
+        }
+        int line = 0;
+        for (int i = 0; i < start; i++) {
+            if (input.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        int from = line;
+        for (int i = start; i < end - 1; i++) {
+            if (input.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        toLine = start < end ? line + 1 : from;
+        fromLine = from;
+    }
+
+    public boolean isEmpty() {
+        return start == end;
+    }
+
+    /**
+     * Returns the span without leading and trailing whitespaces,
+     * the same characters as {@code toString().trim()}.
+     */
+    public Span trim() {
+        int start = this.start;
+        int end = this.end;
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return start == this.start && end == this.end ? this : new Span(input, start, end);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+        }
+        return input.charAt(start + index);
+    }
+
+    /**
+     * Returns the span of the characters, offsets are relative to this span.
+     */
+    @Override
+    public Span subSequence(int start, int end) {
+        if (start < 0 || start > end || end > this.end - this.start) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        return new Span(input, this.start + start, this.start + end);
+    }
+
+    /**
+     * Two spans are equal if they cover the same range of the same input.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Span span = (Span) o;
+
+        if (start != span.start) return false;
+        if (end != span.end) return false;
+        return input == span.input;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = System.identityHashCode(input);
+        result = 31 * result + start;
+        result = 31 * result + end;
+        return result;
+    }
+
+    /**
+     * Returns the characters of the span.
+     */
+    @Override
+    public String toString() {
+        return input.subSequence(start, end).toString();
+    }
+}
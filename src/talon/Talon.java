@@ -0,0 +1,159 @@
+package talon;
+
+import talon.signature.learning.Extraction;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Strips quotations and signatures of messages: the quotation is stripped
+ * first, then the signature is searched in the reply.
+ * <p>
+ * The patterns are compiled once and the signature model is immutable,
+ * so a single instance could process messages on any number of threads.
+ */
+public class Talon {
+    public static final String TEXT_PLAIN = "text/plain";
+
+    private final SignatureModel model;
+    private final ForkJoinPool pool;
+    private final ResultCache cache;
+
+    /**
+     * Batches are processed on the common pool.
+     */
+    public Talon(SignatureModel model) {
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    public Talon(SignatureModel model, ForkJoinPool pool) {
+        this(model, pool, null);
+    }
+
+    /**
+     * Results are looked up in the cache before processing a message,
+     * the cache could be null.
+     */
+    public Talon(SignatureModel model, ForkJoinPool pool, ResultCache cache) {
+        this.model = model;
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the reply of the message without signature and the signature.
+     * <p>
+     * Quotations are stripped from plain text messages only, bodies of
+     * other content types are searched for signature as they are.
+     */
+    public ExtractedSignature process(Message message) {
+        if (cache != null) {
+            return cache.process(this, message, model);
+        }
+        return processUncached(message);
+    }
+
+    ExtractedSignature processUncached(Message message) {
+        return Extraction.extract(stripQuotation(message), message.sender, model);
+    }
+
+    /**
+     * Returns the reply of a plain text message, bodies of other content
+     * types as they are.
+     */
+    static CharSequence stripQuotation(Message message) {
+        if (TEXT_PLAIN.equals(message.contentType)) {
+            return Quotation.extractFromPlain(message.body);
+        }
+        return message.body;
+    }
+
+    /**
+     * Processes the messages in parallel on the pool, results are returned
+     * in the order of the messages.
+     */
+    public List<ExtractedSignature> processBatch(List<Message> messages) {
+        // copied once, the list could be slow to index e.g. a linked list
+        Message[] batch = messages.toArray(new Message[0]);
+        ExtractedSignature[] results = new ExtractedSignature[batch.length];
+        if (results.length > 0) {
+            pool.invoke(new BatchTask(batch, results, 0, results.length));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Splits the batch in halves down to single messages, processing of
+     * a message outweighs the overhead of a task.
+     */
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Message[] messages;
+        private final ExtractedSignature[] results;
+        private final int from;
+        private final int to;
+
+        BatchTask(Message[] messages, ExtractedSignature[] results, int from, int to) {
+            this.messages = messages;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = process(messages[from]);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(messages, results, from, middle),
+                        new BatchTask(messages, results, middle, to));
+            }
+        }
+    }
+
+    public static class Message {
+        final CharSequence body;
+        final String sender;
+        final String contentType;
+
+        /**
+         * Plain text message.
+         */
+        public Message(CharSequence body, String sender) {
+            this(body, sender, TEXT_PLAIN);
+        }
+
+        public Message(CharSequence body, String sender, String contentType) {
+            this.body = body;
+            this.sender = sender;
+            this.contentType = contentType;
+        }
+
+        public CharSequence getBody() {
+            return body;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String toString() {
+            return "Message{" +
+                    "sender='" + sender + '\'' +
+                    ", contentType='" + contentType + '\'' +
+                    ", length=" + body.length() +
+                    '}';
+        }
+    }
+}
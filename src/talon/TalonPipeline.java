@@ -0,0 +1,146 @@
+package talon;
+
+import talon.signature.learning.Extraction;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Processes a stream of messages the same way {@link Talon#process(Talon.Message)}
+ * does in two pipelined stages: quotation stripping and signature extraction,
+ * each running on its own executor.
+ * <p>
+ * Messages are pulled from the source only as the results are pulled:
+ * at most bufferSize messages are in the pipeline at once, counting the
+ * one whose result next() waits for. With a buffer of two or more the
+ * quotation of a message is stripped while the signature of the previous
+ * one is searched, but a slow consumer doesn't make the pipeline read ahead.
+ * Results are returned in the order of the messages.
+ */
+public class TalonPipeline implements AutoCloseable {
+    private final SignatureModel model;
+    private final Executor quotationExecutor;
+    private final Executor signatureExecutor;
+    private final int bufferSize;
+    // executors created by the pipeline, shut down on close
+    private final ExecutorService[] owned;
+
+    /**
+     * Runs every stage on its own pool of the given number of daemon threads,
+     * the pools are shut down by {@link #close()}.
+     */
+    public TalonPipeline(SignatureModel model, int quotationParallelism, int signatureParallelism, int bufferSize) {
+        this(model, newPool(quotationParallelism, "talon-quotation"), newPool(signatureParallelism, "talon-signature"),
+                bufferSize, true);
+    }
+
+    /**
+     * The executors are left running when the pipeline is closed.
+     */
+    public TalonPipeline(SignatureModel model, Executor quotationExecutor, Executor signatureExecutor, int bufferSize) {
+        this(model, quotationExecutor, signatureExecutor, bufferSize, false);
+    }
+
+    private TalonPipeline(SignatureModel model, Executor quotationExecutor, Executor signatureExecutor,
+                          int bufferSize, boolean owned) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize " + bufferSize);
+        }
+        this.model = model;
+        this.quotationExecutor = quotationExecutor;
+        this.signatureExecutor = signatureExecutor;
+        this.bufferSize = bufferSize;
+        this.owned = owned ? new ExecutorService[]{(ExecutorService) quotationExecutor,
+                (ExecutorService) signatureExecutor} : new ExecutorService[0];
+    }
+
+    private static ExecutorService newPool(int parallelism, final String name) {
+        return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the results of the messages, a message is read from the source
+     * when there is room for it in the pipeline.
+     * <p>
+     * The iterator should be used by one thread. If processing of a message
+     * fails, next() throws its exception.
+     */
+    public Iterator<ExtractedSignature> process(final Iterator<Talon.Message> messages) {
+        return new Iterator<ExtractedSignature>() {
+            private final Queue<CompletableFuture<ExtractedSignature>> buffer = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !buffer.isEmpty();
+            }
+
+            @Override
+            public ExtractedSignature next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                // the result counts against the buffer size until it's returned,
+                // the next message enters the pipeline on the next call
+                CompletableFuture<ExtractedSignature> result = buffer.poll();
+                try {
+                    return result.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+
+            private void fill() {
+                while (buffer.size() < bufferSize && messages.hasNext()) {
+                    buffer.add(submit(messages.next()));
+                }
+            }
+        };
+    }
+
+    private CompletableFuture<ExtractedSignature> submit(final Talon.Message message) {
+        return CompletableFuture.supplyAsync(new Supplier<CharSequence>() {
+            @Override
+            public CharSequence get() {
+                return Talon.stripQuotation(message);
+            }
+        }, quotationExecutor).thenApplyAsync(new Function<CharSequence, ExtractedSignature>() {
+            @Override
+            public ExtractedSignature apply(CharSequence reply) {
+                return Extraction.extract(reply, message.sender, model);
+            }
+        }, signatureExecutor);
+    }
+
+    /**
+     * Shuts down the pools created by the pipeline.
+     */
+    @Override
+    public void close() {
+        for (ExecutorService executor : owned) {
+            executor.shutdown();
+        }
+    }
+}
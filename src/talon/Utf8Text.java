@@ -0,0 +1,226 @@
+package talon;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoded text read as characters without decoding it all at once.
+ * <p>
+ * The bytes are scanned once to count the characters, then they are decoded
+ * by blocks of BLOCK_SIZE characters when the characters are read, only the
+ * last decoded block is kept. So reading e.g. the last lines of a message
+ * held in a direct buffer decodes just the blocks holding them.
+ * <p>
+ * Malformed bytes are decoded the same way {@code new String(bytes, UTF_8)}
+ * does, every maximal invalid subsequence is replaced with U+FFFD. The text
+ * could be shared between threads as long as the bytes aren't changed.
+ */
+public final class Utf8Text implements CharSequence {
+    private static final int BLOCK_SHIFT = 10;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final ByteBuffer bytes;
+    private final int length;
+    // offset of the bytes of the first character of every block, negative
+    // if the block starts with the low surrogate of a code point (~offset)
+    private final int[] blockOffsets;
+    private Block block;
+
+    private static final class Block {
+        final int index;
+        final char[] chars;
+
+        Block(int index, char[] chars) {
+            this.index = index;
+            this.chars = chars;
+        }
+    }
+
+    /**
+     * Reads the bytes between the position and the limit of the buffer,
+     * the buffer itself isn't changed.
+     */
+    public Utf8Text(ByteBuffer bytes) {
+        this.bytes = bytes.duplicate();
+        int[] offsets = new int[16];
+        int blocks = 0;
+        int chars = 0;
+        int limit = bytes.limit();
+        for (int position = bytes.position(); position < limit; ) {
+            if (chars == blocks << BLOCK_SHIFT) {
+                offsets = grow(offsets, blocks);
+                offsets[blocks++] = position;
+            }
+            int sequence = sequenceLength(position);
+            if (sequence == 4) {
+                if (chars + 1 == blocks << BLOCK_SHIFT) {
+                    offsets = grow(offsets, blocks);
+                    offsets[blocks++] = ~position;
+                }
+                chars += 2;
+            } else {
+                chars++;
+            }
+            position += Math.abs(sequence);
+        }
+        this.length = chars;
+        this.blockOffsets = offsets;
+    }
+
+    private static int[] grow(int[] array, int size) {
+        if (size < array.length) {
+            return array;
+        }
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, size);
+        return grown;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        Block block = this.block;
+        if (block == null || block.index != index >> BLOCK_SHIFT) {
+            int i = index >> BLOCK_SHIFT;
+            char[] chars = new char[Math.min(BLOCK_SIZE, length - (i << BLOCK_SHIFT))];
+            decode(blockOffsets[i], chars, chars.length);
+            block = new Block(i, chars);
+            this.block = block;
+        }
+        return block.chars[index & (BLOCK_SIZE - 1)];
+    }
+
+    /**
+     * Returns the decoded characters, only the blocks holding them are decoded.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        if (start == 0 && end == length) {
+            return toString();
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns all the characters decoded at once.
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        if (length > 0) {
+            decode(blockOffsets[0], chars, length);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes count characters starting at the block offset.
+     */
+    private void decode(int offset, char[] chars, int count) {
+        int position = offset;
+        int i = 0;
+        if (offset < 0) {
+            position = ~offset;
+            chars[i++] = Character.lowSurrogate(codePoint(position, 4));
+            position += 4;
+        }
+        while (i < count) {
+            int sequence = sequenceLength(position);
+            if (sequence < 0) {
+                chars[i++] = REPLACEMENT;
+                position -= sequence;
+            } else if (sequence == 4) {
+                int codePoint = codePoint(position, 4);
+                chars[i++] = Character.highSurrogate(codePoint);
+                if (i < count) {
+                    chars[i++] = Character.lowSurrogate(codePoint);
+                }
+                position += 4;
+            } else {
+                chars[i++] = (char) codePoint(position, sequence);
+                position += sequence;
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the well-formed sequence of bytes starting at the
+     * position, or the negated length of its maximal invalid prefix which is
+     * replaced with a single U+FFFD.
+     */
+    private int sequenceLength(int position) {
+        int b = bytes.get(position) & 0xff;
+        if (b < 0x80) {
+            return 1;
+        }
+        int length;
+        int low = 0x80;
+        int high = 0xbf;
+        if (b < 0xc2) {
+            return -1;
+        } else if (b < 0xe0) {
+            length = 2;
+        } else if (b < 0xf0) {
+            length = 3;
+            // overlong encodings, surrogates are decoded as malformed sequences below
+            if (b == 0xe0) {
+                low = 0xa0;
+            }
+        } else if (b < 0xf5) {
+            length = 4;
+            // overlong encodings and code points above U+10FFFF
+            if (b == 0xf0) {
+                low = 0x90;
+            } else if (b == 0xf4) {
+                high = 0x8f;
+            }
+        } else {
+            return -1;
+        }
+        for (int i = 1; i < length; i++) {
+            if (position + i >= bytes.limit()) {
+                return -i;
+            }
+            int c = bytes.get(position + i) & 0xff;
+            if (c < low || c > high) {
+                return -i;
+            }
+            low = 0x80;
+            high = 0xbf;
+        }
+        // surrogates are malformed as a whole, like String does
+        if (b == 0xed && (bytes.get(position + 1) & 0xff) >= 0xa0) {
+            return -length;
+        }
+        return length;
+    }
+
+    private int codePoint(int position, int length) {
+        int b = bytes.get(position) & 0xff;
+        switch (length) {
+            case 1:
+                return b;
+            case 2:
+                return (b & 0x1f) << 6 | bytes.get(position + 1) & 0x3f;
+            case 3:
+                return (b & 0x0f) << 12 | (bytes.get(position + 1) & 0x3f) << 6 | bytes.get(position + 2) & 0x3f;
+            default:
+                return (b & 0x07) << 18 | (bytes.get(position + 1) & 0x3f) << 12 |
+                        (bytes.get(position + 2) & 0x3f) << 6 | bytes.get(position + 3) & 0x3f;
+        }
+    }
+}
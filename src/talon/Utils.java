@@ -1,16 +1,16 @@
 package talon;
 
-import java.util.regex.Matcher;
-
 public class Utils {
-    public static String getDelimiter(String body) {
-        Matcher matcher = Constants.RE_DELIMITER.matcher(body);
-        boolean found = matcher.find();
-        if (found) {
-            return matcher.group();
-        } else {
-            return "\n";
+    /**
+     * Returns the first line break (RE_DELIMITER) of the body, "\n" if there is none.
+     */
+    public static String getDelimiter(CharSequence body) {
+        for (int i = 0; i < body.length(); i++) {
+            if (body.charAt(i) == '\n') {
+                return i > 0 && body.charAt(i - 1) == '\r' ? "\r\n" : "\n";
+            }
         }
+        return "\n";
     }
 
     public static String join(String[] string, String delimiter) {
@@ -1,15 +1,13 @@
 package talon.signature;
 
+import talon.MessageLines;
 import talon.signature.learning.Helpers;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Bruteforce {
+    // matched against the reversed markers by candidateLength(char[])
     public static Pattern RE_SIGNATURE_CANDIDATE = Pattern.compile("(c+d)[^d]|(c+d)$|(c+)|(d)[^d]|(d)$");
 
     /**
@@ -23,30 +21,47 @@ public class Bruteforce {
      * not include more than one line that starts with dashes
      */
     public static String[] getSignatureCandidate(String[] lines) {
-        // non empty lines indexes
-        List<Integer> nonEmtpy = new ArrayList<>();
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            if (!line.trim().isEmpty()) {
-                nonEmtpy.add(i);
+        return Arrays.copyOfRange(lines, getSignatureCandidateStart(lines), lines.length);
+    }
+
+    /**
+     * Returns the index of the first line that could hold signature, the
+     * candidate lines range from it to the end of the lines without copying them.
+     */
+    public static int getSignatureCandidateStart(String[] lines) {
+        return getSignatureCandidate(MessageLines.of(lines));
+    }
+
+    /**
+     * Returns the index of the first line that could hold signature,
+     * the number of lines if there is no such line, see {@link #getSignatureCandidate(String[])}.
+     */
+    public static int getSignatureCandidate(MessageLines lines) {
+        // indexes of the last SIGNATURE_MAX_LINES + 1 non empty lines bottom up,
+        // lines are read only as far as needed
+        int[] nonEmpty = new int[Helpers.SIGNATURE_MAX_LINES + 1];
+        int count = 0;
+        for (int i = lines.size() - 1; i >= 0 && count < nonEmpty.length; i--) {
+            if (!lines.isBlank(i)) {
+                nonEmpty[count++] = i;
             }
         }
         // if message is empty or just one line then there is no signature
-        if (nonEmtpy.size() <= 1) {
-            return new String[0];
+        if (count <= 1) {
+            return lines.size();
         }
-        // we don't expect signature to start at the 1st line
-        List<Integer> candidate = nonEmtpy.subList(1, nonEmtpy.size());
-        // signature shouldn't be longer then SIGNATURE_MAX_LINES
-        candidate = candidate.subList(Math.max(0, candidate.size() - Helpers.SIGNATURE_MAX_LINES), candidate.size());
-        char[] markers = markCandidateIndexes(lines, candidate);
-        candidate = processMarkedCandidateIndexes(candidate, markers);
-        if (candidate.size() > 0) {
-            List<String> signatureCandidate = Arrays.asList(lines);
-            signatureCandidate = signatureCandidate.subList(candidate.get(0), signatureCandidate.size());
-            return signatureCandidate.toArray(new String[signatureCandidate.size()]);
+        // we don't expect signature to start at the 1st line and
+        // signature shouldn't be longer then SIGNATURE_MAX_LINES,
+        // either way the top most line isn't a candidate
+        int[] candidate = new int[count - 1];
+        for (int i = 0; i < candidate.length; i++) {
+            candidate[i] = nonEmpty[count - 2 - i];
         }
-        return new String[0];
+        int length = candidateLength(markCandidateIndexes(lines, candidate));
+        if (length > 0) {
+            return candidate[candidate.length - length];
+        }
+        return lines.size();
     }
 
     /**
@@ -58,59 +73,65 @@ public class Bruteforce {
      * l - long line<br>
      * d - line that starts with dashes but has other chars as well<br>
      */
-    static char[] markCandidateIndexes(String[] lines, List<Integer> candidate) {
-        char[] markers = new char[candidate.size()];
-        Arrays.fill(markers, 'c');
-        List<Integer> reverseCandidate = new ArrayList<>(candidate);
-        int[] reverseIndexes = new int[reverseCandidate.size()];
-        for (int i = 0; i < reverseIndexes.length; i++)
-            reverseIndexes[i] = reverseIndexes.length - i - 1;
-        Collections.reverse(reverseCandidate);
-        // mark lines starting from bottom up
-        for (int i = 0; i < reverseCandidate.size(); i++) {
-            Integer lineIdx = reverseCandidate.get(i);
-            if (lines[lineIdx].trim().length() > Helpers.TOO_LONG_SIGNATURE_LINE) {
-                markers[reverseIndexes[i]] = 'l';
+    static char[] markCandidateIndexes(String[] lines, int[] candidate) {
+        return markCandidateIndexes(MessageLines.of(lines), candidate);
+    }
+
+    static char[] markCandidateIndexes(MessageLines lines, int[] candidate) {
+        CharSequence text = lines.text();
+        char[] markers = new char[candidate.length];
+        for (int i = 0; i < candidate.length; i++) {
+            int start = lines.start(candidate[i]);
+            int end = lines.end(candidate[i]);
+            while (start < end && text.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (end - start > Helpers.TOO_LONG_SIGNATURE_LINE) {
+                markers[i] = 'l';
+            } else if (startsWithDashes(text, start, end)) {
+                markers[i] = 'd';
             } else {
-                String line = lines[lineIdx].trim();
-                if (line.startsWith("-") && line.replaceAll("^[-]+", "").replaceAll("[-]+$", "").length() > 0) {
-                    markers[reverseIndexes[i]] = 'd';
-                }
+                markers[i] = 'c';
             }
         }
         return markers;
     }
 
     /**
-     * Run regexes against candidate's marked indexes to strip
-     * signature candidate.
+     * Returns the end of the first participating group of RE_SIGNATURE_CANDIDATE
+     * matched at the start of the reversed markers, 0 if there is no match.
+     * <p>
+     * The markers are read backward in place. The leading 'c' run is taken
+     * whole since c+ can't give any of it back to match 'd', the following
+     * 'd' is included unless another 'd' comes right after it.
      */
-    static List<Integer> processMarkedCandidateIndexes(List<Integer> candidate, char[] markers) {
-        char[] reversedMarkers = Arrays.copyOf(markers, markers.length);
-        reverseArray(reversedMarkers);
-        Matcher matcher = Bruteforce.RE_SIGNATURE_CANDIDATE.matcher(new String(reversedMarkers));
-        if (matcher.find() && matcher.start() == 0) {
-            return candidate.subList(Math.max(0, candidate.size() - end(matcher)), candidate.size());
-        } else {
-            return Collections.emptyList();
+    static int candidateLength(char[] markers) {
+        int n = markers.length;
+        int i = n - 1;
+        while (i >= 0 && markers[i] == 'c') {
+            i--;
         }
-    }
-
-    private static void reverseArray(char[] array) {
-        for(int i = 0; i < array.length / 2; i++) {
-            char temp = array[i];
-            array[i] = array[array.length - i - 1];
-            array[array.length - i - 1] = temp;
+        if (i >= 0 && markers[i] == 'd' && (i == 0 || markers[i - 1] != 'd')) {
+            i--;
         }
+        return n - 1 - i;
     }
 
-    private static int end(Matcher matcher) {
-        for (int i = 1; i <= matcher.groupCount(); i++) {
-            int e = matcher.end(i);
-            if (e > 0) {
-                return e;
+    /**
+     * Returns true if the trimmed line starts with dashes but has other chars as well.
+     */
+    private static boolean startsWithDashes(CharSequence text, int start, int end) {
+        if (start == end || text.charAt(start) != '-') {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (text.charAt(i) != '-') {
+                return true;
             }
         }
-        return -1;
+        return false;
     }
 }
@@ -1,5 +1,6 @@
 package talon.signature.learning;
 
+import libsvm.svm_model;
 import weka.classifiers.functions.LibSVM;
 import weka.core.Attribute;
 import weka.core.FastVector;
@@ -7,15 +8,30 @@ import weka.core.Instance;
 import weka.core.Instances;
 
 import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 
 /**
  * The module's functions could init, train, save and load a classifier.
  * The classifier could be used to detect if a certain line of the message
  * body belongs to the signature.
+ * <p>
+ * Training builds an immutable {@link SignatureModel}, share it
+ * (see {@link #model()}) to score lines from several threads.
  */
 public class Classifier {
-    public LibSVM libSVM;
-    public Instances data;
+    /**
+     * Number of binary features describing a single line.
+     */
+    public static final int FEATURES_COUNT = 12;
+
+    private final LibSVM libSVM;
+    private final Instances data;
+
+    /**
+     * The model built by training or loaded from a saved classifier.
+     */
+    private volatile SignatureModel model;
 
     public Classifier(LibSVM libSVM, Instances data) {
         this.libSVM = libSVM;
@@ -96,5 +112,113 @@ public class Classifier {
         }
 
         classifier.libSVM.buildClassifier(classifier.data);
+        classifier.model = classifier.compile();
+    }
+
+    /**
+     * Saves the trained classifier to the file, see {@link SignatureModel#save(File)}.
+     */
+    public static void save(Classifier classifier, File file) throws IOException {
+        classifier.model().save(file);
+    }
+
+    /**
+     * Loads the classifier saved with {@link #save(Classifier, File)}.
+     */
+    public static Classifier load(File file) throws IOException {
+        Classifier classifier = init();
+        classifier.model = SignatureModel.load(file);
+        return classifier;
+    }
+
+    /**
+     * Returns the trained model.
+     */
+    public SignatureModel model() {
+        SignatureModel model = this.model;
+        if (model == null) {
+            throw new IllegalStateException("Classifier is not trained");
+        }
+        return model;
+    }
+
+    /**
+     * Evaluates the trained model for every combination of line features
+     * so that a line could be classified with a single table lookup.
+     * <p>
+     * Features of a single line are binary, so there are only
+     * 2^FEATURES_COUNT different inputs the model could ever get.
+     */
+    private SignatureModel compile() throws Exception {
+        byte[] predictions = new byte[1 << FEATURES_COUNT];
+        int[] pattern = new int[FEATURES_COUNT];
+        for (int mask = 0; mask < predictions.length; mask++) {
+            for (int j = 0; j < FEATURES_COUNT; j++) {
+                pattern[j] = (mask >> j) & 1;
+            }
+            predictions[mask] = (byte) (evaluate(pattern) ? 1 : 0);
+        }
+        return new SignatureModel(model(libSVM), ByteBuffer.wrap(predictions));
+    }
+
+    /**
+     * Returns true if the features pattern is classified as a signature line.
+     */
+    public boolean isSignature(int[] pattern) {
+        return model().isSignature(pattern);
+    }
+
+    /**
+     * Returns true if the line with the features mask is classified as a signature line.
+     */
+    public boolean isSignature(int mask) {
+        return model().isSignature(mask);
+    }
+
+    /**
+     * Returns the bitmask of a binary features pattern (bit j is set if
+     * feature j occurred) or -1 if some feature occurred more than once.
+     */
+    static int mask(int[] pattern) {
+        int mask = 0;
+        for (int j = 0; j < pattern.length; j++) {
+            if (pattern[j] == 1) {
+                mask |= 1 << j;
+            } else if (pattern[j] != 0) {
+                return -1;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Evaluates the LibSVM classifier for the features pattern.
+     */
+    boolean evaluate(int[] pattern) throws Exception {
+        Instance instance = new Instance(13);
+        instance.setValue(MANY_CAPITALIZED_WORDS, pattern[0]);
+        instance.setValue(TOO_LONG_SIGNATURE_LINE, pattern[1]);
+        instance.setValue(RE_EMAIL, pattern[2]);
+        instance.setValue(RE_URL, pattern[3]);
+        instance.setValue(RE_RELAX_PHONE, pattern[4]);
+        instance.setValue(RE_SEPARATOR, pattern[5]);
+        instance.setValue(RE_SPECIAL_CHARS, pattern[6]);
+        instance.setValue(RE_SIGNATURE_WORDS, pattern[7]);
+        instance.setValue(RE_NAME, pattern[8]);
+        instance.setValue(PUNCTUATION_PERCENT_IS_HIGH, pattern[9]);
+        instance.setValue(PUNCTUATION_PERCENT_IS_VERY_HIGH, pattern[10]);
+        instance.setValue(CONTAINS_SENDER_NAMES, pattern[11]);
+        instance.setDataset(data);
+        double[] distribution = libSVM.distributionForInstance(instance);
+        return distribution[0] < distribution[1];
+    }
+
+    /**
+     * Returns the libsvm model built by LibSVM, it isn't exposed by its API.
+     */
+    private static svm_model model(LibSVM libSVM) throws Exception {
+        Field field = LibSVM.class.getDeclaredField("m_Model");
+        field.setAccessible(true);
+        return (svm_model) field.get(libSVM);
     }
 }
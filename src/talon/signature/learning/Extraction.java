@@ -1,39 +1,23 @@
 package talon.signature.learning;
 
+import talon.Constants;
+import talon.Deadline;
+import talon.DeadlineExceededException;
+import talon.MessageLines;
+import talon.Span;
 import talon.Utils;
 import talon.signature.Bruteforce;
-import weka.core.Instance;
 
 import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Extraction {
+    // matched against the reversed markers by signatureLength(char[])
     static final Pattern RE_REVERSE_SIGNATURE = Pattern.compile("(e*(te*){0,2}s)+");
 
-    static boolean isSignatureLine(String line, String sender, Classifier classifier) {
-        Instance instance = new Instance(13);
-        int[] pattern = FeatureSpace.buildPattern(line, FeatureSpace.features(sender));
-        instance.setValue(Classifier.MANY_CAPITALIZED_WORDS, pattern[0]);
-        instance.setValue(Classifier.TOO_LONG_SIGNATURE_LINE, pattern[1]);
-        instance.setValue(Classifier.RE_EMAIL, pattern[2]);
-        instance.setValue(Classifier.RE_URL, pattern[3]);
-        instance.setValue(Classifier.RE_RELAX_PHONE, pattern[4]);
-        instance.setValue(Classifier.RE_SEPARATOR, pattern[5]);
-        instance.setValue(Classifier.RE_SPECIAL_CHARS, pattern[6]);
-        instance.setValue(Classifier.RE_SIGNATURE_WORDS, pattern[7]);
-        instance.setValue(Classifier.RE_NAME, pattern[8]);
-        instance.setValue(Classifier.PUNCTUATION_PERCENT_IS_HIGH, pattern[9]);
-        instance.setValue(Classifier.PUNCTUATION_PERCENT_IS_VERY_HIGH, pattern[10]);
-        instance.setValue(Classifier.CONTAINS_SENDER_NAMES, pattern[11]);
-        instance.setDataset(classifier.data);
-        double[] distribution;
-        try {
-            distribution = classifier.libSVM.distributionForInstance(instance);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        return distribution[0] < distribution[1];
+    static boolean isSignatureLine(MessageLines lines, int i, FeatureExtractor features, SignatureModel model) {
+        return model.isSignature(features.extract(lines.trimmed(i)));
     }
 
     /**
@@ -42,33 +26,171 @@ public class Extraction {
      * Returns stripped body and signature as a tuple.
      * If no signature is found the corresponding returned value is None.
      */
-    public static ExtractedSignature extract(String body, String sender, Classifier classifier) {
-        String delimiter = Utils.getDelimiter(body);
+    public static ExtractedSignature extract(CharSequence body, String sender, Classifier classifier) {
+        return extract(body, sender, classifier.model());
+    }
 
-        body = body.trim();
+    /**
+     * Strips signature from the body of the message using the trained model.
+     * <p>
+     * The model is immutable, so it could be shared between threads.
+     */
+    public static ExtractedSignature extract(CharSequence body, String sender, SignatureModel model) {
+        return extract(body, sender, model, Deadline.NONE);
+    }
 
-        if (Helpers.hasSignature(body, sender)) {
-            String[] lines = body.split("\r?\n");
-            char[] markers = markLines(lines, sender, classifier);
-            MarkedLines ml = processMarkedLines(lines, markers);
+    /**
+     * Strips signature from the body of the message giving up once the
+     * deadline expires.
+     * <p>
+     * The deadline is checked while the lines are read and between the
+     * stages. If it expires, the trimmed body is returned without signature
+     * and the result is marked as timed out.
+     */
+    public static ExtractedSignature extract(CharSequence body, String sender, SignatureModel model,
+                                             Deadline deadline) {
+        return extract(body, sender, model, null, deadline);
+    }
 
-            if (ml.signature.length > 0) {
-                String text = Utils.join(ml.text, delimiter);
-                if (!text.trim().isEmpty()) {
-                    return new ExtractedSignature(text, Utils.join(ml.signature, delimiter));
-                }
+    /**
+     * Strips signature from the body of the message the same way
+     * {@link #extract(CharSequence, String, SignatureModel, Deadline)} does,
+     * the signatures found are remembered by the memo unless it's null.
+     * If the body ends with a signature the memo remembers for the sender,
+     * the body is split there without classifying its lines.
+     */
+    public static ExtractedSignature extract(CharSequence body, String sender, SignatureModel model,
+                                             SignatureMemo memo, Deadline deadline) {
+        try {
+            return extractSignature(body, sender, model, memo, deadline);
+        } catch (DeadlineExceededException e) {
+            return new ExtractedSignature(Span.of(body).trim().toString(), "", true);
+        }
+    }
+
+    private static ExtractedSignature extractSignature(CharSequence input, String sender, SignatureModel model,
+                                                       SignatureMemo memo, Deadline deadline) {
+        String delimiter = Utils.getDelimiter(input);
+
+        Span body = Span.of(input).trim();
+
+        // signature candidate is among the last SIGNATURE_MAX_LINES non empty
+        // lines not counting the first one, so lines above the last
+        // SIGNATURE_MAX_LINES + 1 non empty lines are always text
+        MessageLines lines = MessageLines.tail(deadline.guard(body), Helpers.SIGNATURE_MAX_LINES + 1);
+        int signature = memo == null ? -1 : memo.find(lines, sender);
+        if (signature < 0) {
+            signature = findSignature(lines, sender, model, deadline);
+            if (memo != null && signature < lines.size()) {
+                memo.remember(lines, signature, sender);
             }
         }
-        return new ExtractedSignature(body, "");
+        if (signature < lines.size()) {
+            String text = joinLines(body.subSequence(0, lines.end(signature - 1)).toString(), delimiter);
+            return new ExtractedSignature(text, lines.join(signature, lines.size(), delimiter));
+        }
+        return new ExtractedSignature(body.toString(), "");
+    }
+
+    /**
+     * Strips signature from the text the same way {@link #extract(CharSequence, String, SignatureModel)}
+     * does, but returns where the text and the signature are in the input
+     * instead of copying them.
+     * <p>
+     * The text could be a part of the input, e.g. the reply found by
+     * {@link talon.Quotation#extractSpans(CharSequence)}. Both returned spans are
+     * stripped, line breaks aren't replaced by the delimiter.
+     */
+    public static SignatureSpans extractSpans(Span text, String sender, SignatureModel model) {
+        Span body = text.trim();
+        MessageLines lines = MessageLines.tail(body, Helpers.SIGNATURE_MAX_LINES + 1);
+        int signature = findSignature(lines, sender, model, Deadline.NONE);
+        if (signature < lines.size()) {
+            // blank lines above the signature aren't a part of the text
+            return new SignatureSpans(body.subSequence(0, lines.end(signature - 1)).trim(),
+                    body.subSequence(lines.start(signature), body.length()));
+        }
+        return new SignatureSpans(body, body.subSequence(body.length(), body.length()));
+    }
+
+    public static SignatureSpans extractSpans(CharSequence body, String sender, SignatureModel model) {
+        return extractSpans(Span.of(body), sender, model);
+    }
+
+    /**
+     * Returns the index of the first signature line of the trimmed body's
+     * last lines, the number of lines if there is no signature.
+     */
+    private static int findSignature(MessageLines lines, String sender, SignatureModel model, Deadline deadline) {
+        deadline.check();
+        if (Helpers.hasSignature(lines, sender)) {
+            deadline.check();
+            char[] markers = markLines(lines, sender, model);
+            deadline.check();
+            int signature = signatureStart(markers);
+            // the text above the signature shouldn't be blank
+            if (signature > 0 && signature < lines.size() && !isBlank(lines.text(), lines.end(signature - 1))) {
+                return signature;
+            }
+        }
+        return lines.size();
+    }
+
+    private static boolean isBlank(CharSequence text, int end) {
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the text with all line terminators replaced by the delimiter,
+     * the same as joining its lines with the delimiter.
+     */
+    private static String joinLines(String text, String delimiter) {
+        boolean crlf = delimiter.length() > 1;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            if (crlf != (i > 0 && text.charAt(i - 1) == '\r')) {
+                return Constants.RE_DELIMITER.matcher(text).replaceAll(Matcher.quoteReplacement(delimiter));
+            }
+        }
+        return text;
     }
 
     public static class ExtractedSignature {
         final String text;
         final String signature;
+        final boolean timedOut;
 
         public ExtractedSignature(String text, String signature) {
+            this(text, signature, false);
+        }
+
+        public ExtractedSignature(String text, String signature, boolean timedOut) {
             this.text = text;
             this.signature = signature;
+            this.timedOut = timedOut;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Returns the signature, an empty string if there is none.
+         */
+        public String getSignature() {
+            return signature;
+        }
+
+        /**
+         * Returns true if the deadline expired before the signature was
+         * searched, the text is the whole body then.
+         */
+        public boolean isTimedOut() {
+            return timedOut;
         }
 
         @Override
@@ -78,6 +200,7 @@ public class Extraction {
 
             ExtractedSignature that = (ExtractedSignature) o;
 
+            if (timedOut != that.timedOut) return false;
             if (!text.equals(that.text)) return false;
             return signature.equals(that.signature);
 
@@ -87,6 +210,7 @@ public class Extraction {
         public int hashCode() {
             int result = text.hashCode();
             result = 31 * result + signature.hashCode();
+            result = 31 * result + (timedOut ? 1 : 0);
             return result;
         }
 
@@ -95,6 +219,7 @@ public class Extraction {
             return "ExtractedSignature{" +
                     "text='" + text + '\'' +
                     ", signature='" + signature + '\'' +
+                    ", timedOut=" + timedOut +
                     '}';
         }
     }
@@ -109,60 +234,115 @@ public class Extraction {
      * t - other i.e. ordinary text line
      */
     static char[] markLines(String[] lines, String sender, Classifier classifier) {
-        String[] candidate = Bruteforce.getSignatureCandidate(lines);
+        return markLines(lines, sender, classifier.model());
+    }
+
+    static char[] markLines(String[] lines, String sender, SignatureModel model) {
+        return markLines(MessageLines.of(lines), sender, model);
+    }
+
+    static char[] markLines(MessageLines lines, String sender, SignatureModel model) {
+        int candidate = Bruteforce.getSignatureCandidate(lines);
         // at first consider everything to be text no signature
-        char[] markers = new char[lines.length];
+        char[] markers = new char[lines.size()];
         Arrays.fill(markers, 't');
         // mark lines starting from bottom up
         // mark only lines that belong to candidate
         // no need to mark all lines of the message
-        String[] reversedCandidate = Arrays.copyOf(candidate, candidate.length);
-        int[] reversedIndexes = new int[reversedCandidate.length];
-        for (int i = 0; i < reversedIndexes.length; i++) reversedIndexes[i] = i;
-        reverseArray(reversedCandidate, reversedIndexes);
-        for (int i = 0; i < reversedCandidate.length; i++) {
-            String line = reversedCandidate[i];
-            // markers correspond to lines not candidate
-            // so we need to recalculate our index to be
-            // relative to lines not candidate
-            int j = lines.length - candidate.length + reversedIndexes[i];
-            if (line.trim().isEmpty()) {
-                markers[j] = 'e';
-            } else if (isSignatureLine(line, sender, classifier)) {
-                markers[j] = 's';
+        FeatureExtractor features = new FeatureExtractor(sender);
+        for (int i = lines.size() - 1; i >= candidate; i--) {
+            if (lines.isBlank(i)) {
+                markers[i] = 'e';
+            } else if (isSignatureLine(lines, i, features, model)) {
+                markers[i] = 's';
             }
         }
         return markers;
     }
 
-    private static void reverseArray(String[] array, int[] indexes) {
-        for(int i = 0; i < array.length / 2; i++) {
-            String temp = array[i];
-            int tempIds = indexes[i];
-            array[i] = array[array.length - i - 1];
-            indexes[i] = indexes[indexes.length - i - 1];
-            array[array.length - i - 1] = temp;
-            indexes[indexes.length - i - 1] = tempIds;
+    static MarkedLines processMarkedLines(String[] lines, char[] markers) {
+        int signature = signatureStart(markers);
+        return new MarkedLines(Arrays.copyOfRange(lines, 0, signature), Arrays.copyOfRange(lines, signature, lines.length));
+    }
+
+    /**
+     * Returns the index of the first signature line, the number of lines
+     * if there is no signature.
+     */
+    static int signatureStart(char[] markers) {
+        return markers.length - signatureLength(markers);
+    }
+
+    /**
+     * Returns the length of the longest RE_REVERSE_SIGNATURE match at the
+     * start of the reversed markers, 0 if there is no match.
+     * <p>
+     * The markers are read backward in place: every repetition of the group
+     * is a run of 'e' holding at most two 't' ended by 's', so it could end
+     * at the first 's' only and there is nothing to backtrack.
+     */
+    static int signatureLength(char[] markers) {
+        int length = 0;
+        int t = 0;
+        for (int i = markers.length - 1; i >= 0; i--) {
+            char c = markers[i];
+            if (c == 's') {
+                length = markers.length - i;
+                t = 0;
+            } else if (c != 'e' && (c != 't' || ++t > 2)) {
+                break;
+            }
         }
+        return length;
     }
 
-    static MarkedLines processMarkedLines(String[] lines, char[] markers) {
-        char[] reveredMarkers = Arrays.copyOf(markers, markers.length);
-        reverseArray(reveredMarkers);
-        Matcher matcher = RE_REVERSE_SIGNATURE.matcher(new String(reveredMarkers));
-        if (matcher.find() && matcher.start() == 0) {
-            return new MarkedLines(Arrays.asList(lines).subList(0, lines.length - matcher.end()).toArray(new String[0]),
-                    Arrays.asList(lines).subList(Math.max(0, lines.length - matcher.end()), lines.length).toArray(new String[0]));
-        } else {
-            return new MarkedLines(lines, new String[0]);
-        }
-    }
-
-    private static void reverseArray(char[] array) {
-        for(int i = 0; i < array.length / 2; i++) {
-            char temp = array[i];
-            array[i] = array[array.length - i - 1];
-            array[array.length - i - 1] = temp;
+    /**
+     * Text and signature found by {@link #extractSpans(Span, String, SignatureModel)}.
+     */
+    public static class SignatureSpans {
+        final Span text;
+        final Span signature;
+
+        public SignatureSpans(Span text, Span signature) {
+            this.text = text;
+            this.signature = signature;
+        }
+
+        public Span getText() {
+            return text;
+        }
+
+        /**
+         * Returns the signature, an empty span after the text if there is none.
+         */
+        public Span getSignature() {
+            return signature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SignatureSpans that = (SignatureSpans) o;
+
+            if (!text.equals(that.text)) return false;
+            return signature.equals(that.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + signature.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "SignatureSpans{" +
+                    "text=[" + text.getStart() + ", " + text.getEnd() + ")" +
+                    ", signature=[" + signature.getStart() + ", " + signature.getEnd() + ")" +
+                    '}';
         }
     }
 
@@ -0,0 +1,364 @@
+package talon.signature.learning;
+
+import talon.KeywordMatcher;
+import talon.MessageLines;
+
+/**
+ * Computes all the signature features of a line in a single pass over
+ * its characters.
+ * <p>
+ * Gives the same results as applying {@link FeatureSpace#features(String)}
+ * to the line: bit j of the returned mask is set if feature j occurred
+ * (see {@link Classifier#mask(int[])}).
+ */
+public class FeatureExtractor {
+    private static final int URL_KEYWORD = 1;
+    private static final int WWW_KEYWORD = 2;
+    private static final int THANK_KEYWORD = 4;
+    private static final int SIGNATURE_KEYWORD = 8;
+
+    // literals of RE_URL and RE_SIGNATURE_WORDS
+    private static final KeywordMatcher KEYWORDS = new KeywordMatcher(false,
+            new String[]{"http://", "https://"},
+            new String[]{"www."},
+            new String[]{"Thank", "thank"},
+            new String[]{"Best", "best", "Regards", "regards", "BR", "Sincerely", "sincerely",
+                    "Corporation", "corporation", "Group"});
+
+    private static final String SENT_FROM_MY = "sent from my";
+
+    // special characters of RE_SPECIAL_CHARS
+    private static final String SPECIAL_CHARS = "*#+^-~&/$_!%:=";
+
+    // RE_NAME states, see name()
+    private static final int NAME_STATES = 10;
+    private static final int NAME_MATCH = 1 << NAME_STATES;
+
+    private final SenderProfile sender;
+
+    public FeatureExtractor(String sender) {
+        this.sender = SenderProfile.of(sender);
+    }
+
+    /**
+     * Applies features to the last SIGNATURE_MAX_LINES non empty lines of the
+     * body and returns the numbers of features occurrences the same way
+     * {@link FeatureSpace#buildPattern(String, Helpers.Feature[])} does.
+     */
+    public int[] buildPattern(String body) {
+        return buildPattern(MessageLines.tail(body, Helpers.SIGNATURE_MAX_LINES));
+    }
+
+    /**
+     * Builds the features pattern of the last SIGNATURE_MAX_LINES non empty lines.
+     */
+    public int[] buildPattern(MessageLines lines) {
+        int[] pattern = new int[Classifier.FEATURES_COUNT];
+        int count = 0;
+        for (int i = lines.size() - 1; i >= 0 && count < Helpers.SIGNATURE_MAX_LINES; i--) {
+            if (!lines.isBlank(i)) {
+                int mask = extract(lines.trimmed(i));
+                for (int j = 0; j < pattern.length; j++) {
+                    pattern[j] += (mask >> j) & 1;
+                }
+                count++;
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * Returns the features mask of the trimmed line.
+     */
+    public int extract(CharSequence line) {
+        int n = line.length();
+
+        int words = 0;
+        int validWords = 0;
+        int capitalizedWords = 0;
+        int wordStart = -1;
+
+        int keywordState = 0;
+        int keywords = 0;
+        boolean thank = false;
+        boolean signatureWords = false;
+        int sentFromMy = 0;
+        int sentFromMyMismatches = 0;
+
+        int wwwStart = -1;
+        boolean wwwDot = false;
+        boolean url = false;
+
+        boolean email = false;
+        boolean phone = false;
+        int nameStates = 0;
+        int punctuation = 0;
+        int senderState = 0;
+        boolean senderNames = false;
+
+        int separatorState = 0;
+        int separatorCount = 0;
+        int specialState = 0;
+        int specialCount = 0;
+        boolean separatorBeforeLast = false;
+        boolean specialBeforeLast = false;
+
+        for (int i = 0; i < n; i++) {
+            char c = line.charAt(i);
+            boolean space = isSpace(c);
+
+            // words split by whitespaces
+            if (!space && wordStart < 0) {
+                wordStart = i;
+            } else if (space && wordStart >= 0) {
+                words++;
+                if (isValidWord(line, wordStart, i)) {
+                    validWords++;
+                    if (Character.isUpperCase(line.charAt(wordStart))) {
+                        capitalizedWords++;
+                    }
+                }
+                wordStart = -1;
+            }
+
+            // keywords
+            keywordState = KEYWORDS.next(keywordState, c);
+            int found = KEYWORDS.flags(keywordState);
+            keywords |= found;
+            if (isLineTerminator(c)) {
+                thank = false;
+            } else if ((found & THANK_KEYWORD) != 0) {
+                thank = true;
+            } else if (c == ',' && thank) {
+                signatureWords = true;
+            }
+            if (i < SENT_FROM_MY.length()) {
+                if (c == SENT_FROM_MY.charAt(i)) {
+                    sentFromMy++;
+                }
+            } else if (!(space || c == ',' || c == '!' || isWordChar(c))) {
+                sentFromMyMismatches++;
+            }
+
+            // "www." followed by non whitespaces containing a dot
+            if (space) {
+                wwwStart = -1;
+                wwwDot = false;
+            } else if (wwwStart >= 0 && i > wwwStart) {
+                if (wwwDot) {
+                    url = true;
+                } else if (c == '.') {
+                    wwwDot = true;
+                }
+            }
+            if ((found & WWW_KEYWORD) != 0 && wwwStart < 0) {
+                wwwStart = i + 1;
+            }
+
+            email |= c == '@';
+            if (!phone && i > 0 && isDigit(c) && isDigit(line.charAt(i - 1))) {
+                phone = isPhone(line, i - 1);
+            }
+            nameStates = name(nameStates, c);
+            if (Character.getType(c) == Character.OTHER_PUNCTUATION) {
+                punctuation++;
+            }
+            senderState = sender.next(senderState, c);
+            senderNames |= sender.found(senderState);
+
+            separatorBeforeLast = isSeparator(separatorState, separatorCount, 2);
+            specialBeforeLast = isSeparator(specialState, specialCount, 10);
+            separatorState = separator(separatorState, c == '-', space);
+            if (separatorState == 1 && c == '-') {
+                separatorCount++;
+            }
+            specialState = separator(specialState, SPECIAL_CHARS.indexOf(c) >= 0, space);
+            if (specialState == 1 && !space) {
+                specialCount++;
+            }
+        }
+        if (wordStart >= 0) {
+            words++;
+            if (isValidWord(line, wordStart, n)) {
+                validWords++;
+                if (Character.isUpperCase(line.charAt(wordStart))) {
+                    capitalizedWords++;
+                }
+            }
+        }
+        // '$' also matches before a line terminator ending the line,
+        // the ones which aren't whitespaces should be handled separately
+        boolean lastTerminator = n > 0 && isLineTerminator(line.charAt(n - 1)) && !isSpace(line.charAt(n - 1));
+
+        int mask = 0;
+        // Matches companies names, sender's names, address.
+        if (words > 1 && validWords > 0 && 100 * capitalizedWords / validWords > 66) {
+            mask |= 1;
+        }
+        // Line is too long.
+        if (n > Helpers.TOO_LONG_SIGNATURE_LINE) {
+            mask |= 1 << 1;
+        }
+        // Line contains email pattern.
+        if (email) {
+            mask |= 1 << 2;
+        }
+        // Line contains url.
+        if (url || (keywords & URL_KEYWORD) != 0) {
+            mask |= 1 << 3;
+        }
+        // Line contains phone number pattern.
+        if (phone) {
+            mask |= 1 << 4;
+        }
+        // Line matches the regular expression "^[\s]*---*[\s]*$".
+        if (isSeparator(separatorState, separatorCount, 2) || (lastTerminator && separatorBeforeLast)) {
+            mask |= 1 << 5;
+        }
+        // Line has a sequence of 10 or more special characters.
+        if (isSeparator(specialState, specialCount, 10) || (lastTerminator && specialBeforeLast)) {
+            mask |= 1 << 6;
+        }
+        // Line contains any typical signature words.
+        if (signatureWords || (keywords & SIGNATURE_KEYWORD) != 0 || (sentFromMy == SENT_FROM_MY.length() &&
+                (sentFromMyMismatches == 0 || (sentFromMyMismatches == 1 && lastTerminator)))) {
+            mask |= 1 << 7;
+        }
+        // Line contains a pattern like Vitor R. Carvalho or William W. Cohen.
+        if ((nameStates & NAME_MATCH) != 0) {
+            mask |= 1 << 8;
+        }
+        // Percentage of punctuation symbols in the line is larger than 50%
+        // Percentage of punctuation symbols in the line is larger than 90%
+        if (n > 0 && 100 * punctuation / n > 50) {
+            mask |= 1 << 9 | 1 << 10;
+        }
+        if (senderNames) {
+            mask |= 1 << 11;
+        }
+        return mask;
+    }
+
+    /**
+     * Word is valid unless it matches INVALID_WORD_START.
+     */
+    private static boolean isValidWord(CharSequence line, int start, int end) {
+        char first = line.charAt(start);
+        if (end - start == 1 && (first == '(' || first == '+')) {
+            return false;
+        }
+        if (isDigit(first)) {
+            for (int i = start + 1; i < end; i++) {
+                if (isLineTerminator(line.charAt(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if RE_RELAX_PHONE matches two digits units where the second
+     * unit starts with two digits at the position.
+     * <p>
+     * The units are separated by " ?\)?.{0,3}\(? ?".
+     */
+    static boolean isPhone(CharSequence line, int start) {
+        // the gap between units is at most 7 characters long
+        for (int end = start; end >= Math.max(2, start - 7); end--) {
+            if (isDigit(line.charAt(end - 1)) && isDigit(line.charAt(end - 2)) && isPhoneGap(line, end, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPhoneGap(CharSequence line, int start, int end) {
+        if (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        if (start < end && line.charAt(start) == ')') {
+            start++;
+        }
+        if (start < end && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start < end && line.charAt(end - 1) == '(') {
+            end--;
+        }
+        if (end - start > 3) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (isLineTerminator(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs RE_NAME ("[A-Z][a-z]+\s\s?[A-Z][\.]?\s\s?[A-Z][a-z]+") states
+     * on the character, bit i is set if the pattern is at state i.
+     */
+    private static int name(int states, char c) {
+        boolean upper = c >= 'A' && c <= 'Z';
+        boolean lower = c >= 'a' && c <= 'z';
+        boolean space = isSpace(c);
+        // the pattern could start at every character
+        states |= 1;
+        int next = states & NAME_MATCH;
+        if ((states & 1) != 0 && upper) next |= 1 << 1;
+        if ((states & 1 << 1 | states & 1 << 2) != 0 && lower) next |= 1 << 2;
+        if ((states & 1 << 2) != 0 && space) next |= 1 << 3;
+        if ((states & 1 << 3) != 0 && space) next |= 1 << 4;
+        if ((states & (1 << 3 | 1 << 4)) != 0 && upper) next |= 1 << 5;
+        if ((states & 1 << 5) != 0 && c == '.') next |= 1 << 6;
+        if ((states & (1 << 5 | 1 << 6)) != 0 && space) next |= 1 << 7;
+        if ((states & 1 << 7) != 0 && space) next |= 1 << 8;
+        if ((states & (1 << 7 | 1 << 8)) != 0 && upper) next |= 1 << 9;
+        if ((states & 1 << 9) != 0 && lower) next |= NAME_MATCH;
+        return next;
+    }
+
+    /**
+     * Runs "^[\s]*X{k,}[\s]*$" states on the character:
+     * 0 - leading whitespaces, 1 - X characters, 2 - trailing whitespaces, 3 - no match.
+     */
+    private static int separator(int state, boolean x, boolean space) {
+        switch (state) {
+            case 0:
+                return space ? 0 : x ? 1 : 3;
+            case 1:
+                return x ? 1 : space ? 2 : 3;
+            case 2:
+                return space ? 2 : 3;
+            default:
+                return 3;
+        }
+    }
+
+    private static boolean isSeparator(int state, int count, int minCount) {
+        return (state == 1 || state == 2) && count >= minCount;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    /**
+     * Characters '.' doesn't match.
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
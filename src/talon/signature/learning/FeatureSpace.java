@@ -1,7 +1,6 @@
 package talon.signature.learning;
 
-import java.util.ArrayList;
-import java.util.List;
+import talon.MessageLines;
 
 /**
  * The module provides functions for conversion of a message body/body lines
@@ -35,7 +34,12 @@ public class FeatureSpace {
                 // Line contains url.
                 new Helpers.SearchFeature(Helpers.RE_URL),
                 // Line contains phone number pattern.
-                new Helpers.SearchFeature(Helpers.RE_RELAX_PHONE),
+                new Helpers.Feature() {
+                    @Override
+                    public boolean apply(String text) {
+                        return Helpers.containsPhone(text);
+                    }
+                },
                 // Line matches the regular expression "^[\s]*---*[\s]*$".
                 new Helpers.SearchFeature(Helpers.RE_SEPARATOR),
                 // Line has a sequence of 10 or more special characters.
@@ -77,20 +81,25 @@ public class FeatureSpace {
      * feature j occurred in line i (counting from the last line of the body).
      */
     public static boolean[][] applyFeatures(String body, Helpers.Feature[] features) {
-        List<String> lines = new ArrayList<>();
-        // collect all non empty lines
-        for (String line : body.split("\r?\n")) {
-            String trimmed = line.trim();
-            if (trimmed.length() > 0) {
-                lines.add(trimmed);
+        return applyFeatures(MessageLines.tail(body, Helpers.SIGNATURE_MAX_LINES), features);
+    }
+
+    /**
+     * Applies features to the last SIGNATURE_MAX_LINES non empty lines.
+     */
+    public static boolean[][] applyFeatures(MessageLines lines, Helpers.Feature[] features) {
+        // take the last SIGNATURE_MAX_LINES non empty lines
+        int[] indexes = new int[Helpers.SIGNATURE_MAX_LINES];
+        int count = 0;
+        for (int i = lines.size() - 1; i >= 0 && count < indexes.length; i--) {
+            if (!lines.isBlank(i)) {
+                indexes[indexes.length - ++count] = i;
             }
         }
-        // take the last SIGNATURE_MAX_LINES
-        lines = lines.subList(Math.max(0, lines.size() - Helpers.SIGNATURE_MAX_LINES), lines.size());
         // apply features, fallback to zeros
-        boolean[][] results = new boolean[lines.size()][features.length];
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
+        boolean[][] results = new boolean[count][features.length];
+        for (int i = 0; i < count; i++) {
+            String line = lines.trimmed(indexes[indexes.length - count + i]);
             for (int j = 0; j < features.length; j++) {
                 Helpers.Feature feature = features[j];
                 results[i][j] = feature.apply(line);
@@ -1,5 +1,7 @@
 package talon.signature.learning;
 
+import talon.MessageLines;
+
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -53,17 +55,7 @@ public class Helpers {
      * Searches sender's name or it's part.
      */
     public static boolean containsSenderNames(String text, String sender) {
-        StringBuilder sb = new StringBuilder();
-        for (String name : extractNames(sender)) {
-            if (sb.length() > 0)
-                sb.append("( |$)");
-            sb.append(name).append("|").append(capitalize(name));
-        }
-        return sb.length() > 0 && Pattern.compile(sb.toString()).matcher(text).find();
-    }
-
-    private static String capitalize(final String line) {
-        return Character.toUpperCase(line.charAt(0)) + line.substring(1);
+        return SenderProfile.of(sender).containsNames(text);
     }
 
     /**
@@ -119,25 +111,47 @@ public class Helpers {
     }
 
     /**
-     * Checks if the body has signature. Returns True or False.
+     * Returns true if RE_RELAX_PHONE finds a phone number in the text.
+     * <p>
+     * Every pair of digits is checked against the few characters before it,
+     * so unlike the pattern it takes linear time e.g. on long digit runs.
      */
-    public static boolean hasSignature(String body, String sender) {
-        List<String> lines = new ArrayList<>();
-        for (String line : body.split("\r?\n")) {
-            if (!line.trim().isEmpty()) {
-                lines.add(line);
+    public static boolean containsPhone(CharSequence text) {
+        for (int i = 1; i < text.length(); i++) {
+            if (FeatureExtractor.isDigit(text.charAt(i)) && FeatureExtractor.isDigit(text.charAt(i - 1)) &&
+                    FeatureExtractor.isPhone(text, i - 1)) {
+                return true;
             }
         }
-        lines = lines.subList(Math.max(0, lines.size() - Helpers.SIGNATURE_MAX_LINES), lines.size());
+        return false;
+    }
+
+    /**
+     * Checks if the body has signature. Returns True or False.
+     */
+    public static boolean hasSignature(CharSequence body, String sender) {
+        return hasSignature(MessageLines.tail(body, Helpers.SIGNATURE_MAX_LINES), sender);
+    }
+
+    /**
+     * Checks if the last SIGNATURE_MAX_LINES non empty lines have signature.
+     */
+    public static boolean hasSignature(MessageLines lines, String sender) {
         int upvotes = 0;
-        for (String line : lines) {
+        int count = 0;
+        for (int i = lines.size() - 1; i >= 0 && count < Helpers.SIGNATURE_MAX_LINES; i--) {
+            if (lines.isBlank(i)) {
+                continue;
+            }
+            count++;
             // we check lines for sender's name, phone, email and url,
             // those signature lines don't take more then 27 lines
-            if (line.trim().length() <= 27) {
+            if (lines.trimmedLength(i) <= 27) {
+                String line = lines.line(i);
                 if (containsSenderNames(line, sender)) {
                     return true;
                 } else {
-                    if ((RE_RELAX_PHONE.matcher(line).find() ? 1 : 0) +
+                    if ((containsPhone(line) ? 1 : 0) +
                             (RE_EMAIL.matcher(line).find() ? 1 : 0) + (RE_URL.matcher(line).find() ? 1 : 0) == 1) {
                         upvotes++;
                     }
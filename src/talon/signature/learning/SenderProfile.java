@@ -0,0 +1,81 @@
+package talon.signature.learning;
+
+import talon.KeywordMatcher;
+import talon.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sender's names compiled for searching them in message lines.
+ * <p>
+ * Profiles are immutable and cached by the sender string,
+ * use {@link #of(String)} to get one.
+ */
+public final class SenderProfile {
+    static final int CACHE_SIZE = 4096;
+
+    private static final LruCache<String, SenderProfile> CACHE = new LruCache<>(CACHE_SIZE);
+
+    private final KeywordMatcher names;
+
+    private SenderProfile(String sender) {
+        // the names are searched the way the "name|Name( |$)name|Name..."
+        // pattern does: any name, a capitalized name followed by a space
+        // and the next name or the last capitalized name
+        List<String> keywords = new ArrayList<>();
+        String previous = null;
+        for (String name : Helpers.extractNames(sender)) {
+            if (previous == null) {
+                keywords.add(name);
+            } else {
+                keywords.add(capitalize(previous) + " " + name);
+            }
+            previous = name;
+        }
+        if (previous != null) {
+            keywords.add(capitalize(previous));
+            names = new KeywordMatcher(false, keywords.toArray(new String[keywords.size()]));
+        } else {
+            names = null;
+        }
+    }
+
+    /**
+     * Returns the profile of the sender.
+     */
+    public static SenderProfile of(String sender) {
+        SenderProfile profile = CACHE.get(sender);
+        if (profile == null) {
+            profile = new SenderProfile(sender);
+            CACHE.put(sender, profile);
+        }
+        return profile;
+    }
+
+    private static String capitalize(final String line) {
+        return Character.toUpperCase(line.charAt(0)) + line.substring(1);
+    }
+
+    /**
+     * Searches sender's name or it's part.
+     */
+    public boolean containsNames(CharSequence text) {
+        return names != null && names.match(text) != 0;
+    }
+
+    /**
+     * Returns the state of names search after reading the character,
+     * the search starts from state 0.
+     */
+    int next(int state, char c) {
+        return names != null ? names.next(state, c) : 0;
+    }
+
+    /**
+     * Returns true if a name ends at the last character read to get to the state.
+     */
+    boolean found(int state) {
+        return names != null && names.flags(state) != 0;
+    }
+}
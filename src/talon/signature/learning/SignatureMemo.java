@@ -0,0 +1,288 @@
+package talon.signature.learning;
+
+import talon.MessageLines;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signatures recently extracted for every sender, so that a message ending
+ * with a remembered signature is split without classifying its lines.
+ * <p>
+ * A signature is remembered as the rolling hash of its non blank lines read
+ * bottom up, and the number of the lines. The last lines of a new message
+ * are hashed the same way, one line at a time, so every remembered
+ * signature is checked in a single pass over the tail.
+ * <p>
+ * The memo is a direct-mapped table of a fixed number of senders: a sender
+ * takes the slot of another one whose address hashes to the same slot.
+ * Each slot keeps the last SIGNATURES_PER_SENDER signatures of its sender.
+ * The table is either on the heap or in a memory-mapped file, so it survives
+ * restarts. Slots are locked independently, the memo could be shared between
+ * threads.
+ */
+public final class SignatureMemo {
+    static final int MAGIC = 0x544C4E4D;
+    static final int VERSION = 1;
+
+    static final int SIGNATURES_PER_SENDER = 4;
+
+    private static final int HEADER_SIZE = 16;
+    // sender hash, signature hashes and the signatures' line counts packed into a long
+    private static final int SLOT_LONGS = 2 + SIGNATURES_PER_SENDER;
+    private static final int SLOT_SIZE = SLOT_LONGS * 8;
+    private static final int LOCKS = 64;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long ROLLING_BASE = 0x9e3779b97f4a7c15L;
+
+    private final ByteBuffer table;
+    private final int slots;
+    private final Object[] locks = new Object[LOCKS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates the memo on the heap for the given number of senders.
+     */
+    public SignatureMemo(int senders) {
+        this(ByteBuffer.allocate(HEADER_SIZE + senders * SLOT_SIZE), senders);
+        table.putInt(0, MAGIC);
+        table.putInt(4, VERSION);
+        table.putInt(8, senders);
+    }
+
+    private SignatureMemo(ByteBuffer table, int senders) {
+        if (senders <= 0) {
+            throw new IllegalArgumentException("Senders count should be positive: " + senders);
+        }
+        this.table = table;
+        this.slots = senders;
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens the memo kept in the file, the file is created if it doesn't
+     * exist. If the file holds a memo for another number of senders, it's
+     * cleared.
+     * <p>
+     * Changes are written to the file by the OS, {@link #flush()} forces them.
+     */
+    public static SignatureMemo open(File file, int senders) throws IOException {
+        if (senders <= 0) {
+            throw new IllegalArgumentException("Senders count should be positive: " + senders);
+        }
+        long size = HEADER_SIZE + (long) senders * SLOT_SIZE;
+        MappedByteBuffer table;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean valid = channel.size() == size;
+            if (!valid) {
+                // a memo for more senders leaves the file longer
+                channel.truncate(size);
+            }
+            table = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid || table.getInt(0) != MAGIC || table.getInt(4) != VERSION || table.getInt(8) != senders) {
+                for (int i = 0; i < size; i += 8) {
+                    table.putLong(i, 0);
+                }
+                table.putInt(0, MAGIC);
+                table.putInt(4, VERSION);
+                table.putInt(8, senders);
+            }
+        }
+        return new SignatureMemo(table, senders);
+    }
+
+    /**
+     * Writes the changes of a memo kept in a file to the file.
+     */
+    public void flush() {
+        if (table instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) table).force();
+        }
+    }
+
+    /**
+     * Returns the index of the first line of a remembered signature of the
+     * sender the lines end with, -1 if they don't end with any. The lines
+     * above the signature shouldn't be blank.
+     */
+    int find(MessageLines lines, String sender) {
+        long key = senderKey(sender);
+        int slot = slot(key);
+        long[] entry = new long[SLOT_LONGS];
+        synchronized (locks[slot % LOCKS]) {
+            read(slot, entry);
+        }
+        if (entry[0] == key) {
+            int maxCount = 0;
+            for (int j = 0; j < SIGNATURES_PER_SENDER; j++) {
+                maxCount = Math.max(maxCount, count(entry, j));
+            }
+            long hash = 0;
+            int count = 0;
+            for (int i = lines.size() - 1; i > 0 && count < maxCount; i--) {
+                if (lines.isBlank(i)) {
+                    continue;
+                }
+                hash = hash * ROLLING_BASE + lineHash(lines, i);
+                count++;
+                for (int j = 0; j < SIGNATURES_PER_SENDER; j++) {
+                    if (count(entry, j) == count && entry[1 + j] == hash && !isBlankAbove(lines, i)) {
+                        hits.increment();
+                        return i;
+                    }
+                }
+            }
+        }
+        misses.increment();
+        return -1;
+    }
+
+    /**
+     * Remembers the signature starting at the line as the sender's most recent one.
+     */
+    void remember(MessageLines lines, int signature, String sender) {
+        long hash = 0;
+        int count = 0;
+        for (int i = lines.size() - 1; i >= signature; i--) {
+            if (!lines.isBlank(i)) {
+                hash = hash * ROLLING_BASE + lineHash(lines, i);
+                count++;
+            }
+        }
+        if (count == 0 || count > 0xffff) {
+            return;
+        }
+        long key = senderKey(sender);
+        int slot = slot(key);
+        long[] entry = new long[SLOT_LONGS];
+        synchronized (locks[slot % LOCKS]) {
+            read(slot, entry);
+            if (entry[0] != key) {
+                // the slot is taken over from another sender
+                entry = new long[SLOT_LONGS];
+                entry[0] = key;
+            }
+            // the signature moves to the front, the least recent one is dropped
+            int last = SIGNATURES_PER_SENDER - 1;
+            for (int j = 0; j < SIGNATURES_PER_SENDER; j++) {
+                if (count(entry, j) == count && entry[1 + j] == hash) {
+                    last = j;
+                    break;
+                }
+            }
+            long counts = entry[SLOT_LONGS - 1];
+            for (int j = last; j > 0; j--) {
+                entry[1 + j] = entry[j];
+            }
+            long below = last + 1 < SIGNATURES_PER_SENDER ? counts & (-1L << 16 * (last + 1)) : 0;
+            long above = counts & ((1L << 16 * last) - 1);
+            entry[1] = hash;
+            entry[SLOT_LONGS - 1] = below | above << 16 | count;
+            write(slot, entry);
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the share of messages ending with a remembered signature,
+     * 0 if no message was checked.
+     */
+    public double hitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static int count(long[] entry, int j) {
+        return (int) (entry[SLOT_LONGS - 1] >>> 16 * j) & 0xffff;
+    }
+
+    private void read(int slot, long[] entry) {
+        int offset = HEADER_SIZE + slot * SLOT_SIZE;
+        for (int i = 0; i < SLOT_LONGS; i++) {
+            entry[i] = table.getLong(offset + i * 8);
+        }
+    }
+
+    private void write(int slot, long[] entry) {
+        int offset = HEADER_SIZE + slot * SLOT_SIZE;
+        for (int i = 0; i < SLOT_LONGS; i++) {
+            table.putLong(offset + i * 8, entry[i]);
+        }
+    }
+
+    private int slot(long key) {
+        return (int) ((key >>> 1) % slots);
+    }
+
+    /**
+     * Returns the hash of the sender's address, never 0 which marks empty slots.
+     * <p>
+     * The address is the part within angle brackets if there are any, case
+     * is ignored, so "Bob <bob@example.com>" and "BOB@example.com" are
+     * the same sender.
+     */
+    static long senderKey(String sender) {
+        String address = sender == null ? "" : sender;
+        int open = address.lastIndexOf('<');
+        int close = address.lastIndexOf('>');
+        if (open >= 0 && close > open) {
+            address = address.substring(open + 1, close);
+        }
+        address = address.trim().toLowerCase(Locale.ROOT);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < address.length(); i++) {
+            hash = (hash ^ address.charAt(i)) * FNV_PRIME;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Returns the hash of the line without leading and trailing whitespaces.
+     */
+    private static long lineHash(MessageLines lines, int i) {
+        CharSequence text = lines.text();
+        int start = lines.start(i);
+        int end = lines.end(i);
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        long hash = FNV_OFFSET;
+        for (int j = start; j < end; j++) {
+            hash = (hash ^ text.charAt(j)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static boolean isBlankAbove(MessageLines lines, int i) {
+        CharSequence text = lines.text();
+        for (int j = lines.end(i - 1) - 1; j >= 0; j--) {
+            if (text.charAt(j) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
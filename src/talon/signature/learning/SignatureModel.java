@@ -0,0 +1,268 @@
+package talon.signature.learning;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import talon.Hash128;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trained signature classifier model.
+ * <p>
+ * The model is immutable: any number of threads could score lines
+ * against the same instance at the same time.
+ */
+public final class SignatureModel {
+    /**
+     * Saved model file signature ("TLNS") and format version.
+     */
+    static final int MAGIC = 0x544C4E53;
+    static final int VERSION = 1;
+
+    /**
+     * The libsvm model, it's never modified and libsvm only reads it
+     * to make predictions.
+     */
+    private final svm_model model;
+
+    /**
+     * Predictions for every combination of line features, one byte per
+     * feature bitmask (see {@link Classifier#mask(int[])}). Points into
+     * the mapped file for loaded models. Only absolute reads are used,
+     * they don't change the buffer state.
+     */
+    private final ByteBuffer predictions;
+
+    /**
+     * Hash of the predictions table, see {@link #fingerprint()}.
+     */
+    private final Hash128 fingerprint;
+
+    SignatureModel(svm_model model, ByteBuffer predictions) {
+        this.model = model;
+        this.predictions = predictions;
+        Hash128.Hasher hasher = new Hash128.Hasher();
+        for (int i = 0; i < 1 << Classifier.FEATURES_COUNT; i += 8) {
+            hasher.put(predictions.getLong(i));
+        }
+        this.fingerprint = hasher.hash();
+    }
+
+    /**
+     * Returns the hash of the predictions table, models predicting the same
+     * for every features mask have the same fingerprint, so signatures
+     * extracted with one of them are valid for the other.
+     */
+    public Hash128 fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns true if the line with the features mask is classified as a signature line.
+     */
+    public boolean isSignature(int mask) {
+        return predictions.get(mask) != 0;
+    }
+
+    /**
+     * Returns true if the features pattern is classified as a signature line.
+     * <p>
+     * Binary patterns are looked up in the predictions table,
+     * other patterns are evaluated with the libsvm model.
+     */
+    public boolean isSignature(int[] pattern) {
+        int mask = Classifier.mask(pattern);
+        if (mask >= 0) {
+            return isSignature(mask);
+        }
+        double[] values = new double[Classifier.FEATURES_COUNT];
+        for (int j = 0; j < Classifier.FEATURES_COUNT; j++) {
+            values[j] = pattern[j];
+        }
+        // LibSVM passes class indexes as labels, 1 is "true"
+        return svm.svm_predict(model, nodes(values)) == 1;
+    }
+
+    /**
+     * Saves the model to the file.
+     * <p>
+     * The file holds the libsvm model (support vectors, coefficients and
+     * kernel parameters) followed by the compiled predictions table:
+     * <pre>
+     * int    magic, version, features count
+     * int    svm type, kernel type, degree
+     * double gamma, coef0
+     * int    classes count (n), support vectors count (l)
+     * double rho[n * (n - 1) / 2]
+     * int    label[n], nSV[n]
+     * double sv_coef[n - 1][l]
+     * double SV[l][features count]
+     * byte   predictions[2^features count]
+     * </pre>
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(Classifier.FEATURES_COUNT);
+            out.writeInt(model.param.svm_type);
+            out.writeInt(model.param.kernel_type);
+            out.writeInt(model.param.degree);
+            out.writeDouble(model.param.gamma);
+            out.writeDouble(model.param.coef0);
+            out.writeInt(model.nr_class);
+            out.writeInt(model.l);
+            for (int i = 0; i < model.nr_class * (model.nr_class - 1) / 2; i++) {
+                out.writeDouble(model.rho[i]);
+            }
+            for (int i = 0; i < model.nr_class; i++) {
+                out.writeInt(model.label[i]);
+            }
+            for (int i = 0; i < model.nr_class; i++) {
+                out.writeInt(model.nSV[i]);
+            }
+            for (int i = 0; i < model.nr_class - 1; i++) {
+                for (int j = 0; j < model.l; j++) {
+                    out.writeDouble(model.sv_coef[i][j]);
+                }
+            }
+            for (int i = 0; i < model.l; i++) {
+                double[] values = new double[Classifier.FEATURES_COUNT];
+                for (svm_node node : model.SV[i]) {
+                    values[node.index - 1] = node.value;
+                }
+                for (double value : values) {
+                    out.writeDouble(value);
+                }
+            }
+            for (int mask = 0; mask < 1 << Classifier.FEATURES_COUNT; mask++) {
+                out.writeByte(predictions.get(mask));
+            }
+        }
+    }
+
+    /**
+     * Loads the model saved with {@link #save(File)}.
+     * <p>
+     * The file is memory mapped and the predictions table is read right
+     * from the mapping, so processes loading the same file share its pages.
+     */
+    public static SignatureModel load(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return load(buffer);
+    }
+
+    /**
+     * Loads the model from the buffer holding a saved model.
+     */
+    public static SignatureModel load(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        if (in.remaining() < 12 || in.getInt() != MAGIC) {
+            throw new IOException("Not a saved classifier");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported classifier version: " + version);
+        }
+        int featuresCount = in.getInt();
+        if (featuresCount != Classifier.FEATURES_COUNT) {
+            throw new IOException("Unsupported features count: " + featuresCount);
+        }
+        try {
+            return read(in);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupted classifier", e);
+        }
+    }
+
+    /**
+     * Reads the model following the header, the counts are checked against
+     * the bytes left before the arrays are allocated.
+     */
+    private static SignatureModel read(ByteBuffer in) throws IOException {
+        svm_model model = new svm_model();
+        model.param = new svm_parameter();
+        model.param.svm_type = in.getInt();
+        model.param.kernel_type = in.getInt();
+        model.param.degree = in.getInt();
+        model.param.gamma = in.getDouble();
+        model.param.coef0 = in.getDouble();
+        model.nr_class = in.getInt();
+        model.l = in.getInt();
+        if (model.nr_class < 2 || model.l < 0) {
+            throw new IOException("Corrupted classifier: " + model.nr_class + " classes, " + model.l + " vectors");
+        }
+        // rho, labels, numbers of vectors, coefficients, vectors and the predictions table,
+        // labels and numbers of vectors alone should fit so the sum doesn't overflow
+        long classes = model.nr_class;
+        long required = 8 * (classes * (classes - 1) / 2) + 4 * 2 * classes + 8 * (classes - 1) * model.l +
+                8L * model.l * Classifier.FEATURES_COUNT + (1 << Classifier.FEATURES_COUNT);
+        if (8 * classes > in.remaining() || required != in.remaining()) {
+            throw new IOException("Corrupted classifier: " + required + " bytes expected, " + in.remaining() + " left");
+        }
+        model.rho = new double[model.nr_class * (model.nr_class - 1) / 2];
+        for (int i = 0; i < model.rho.length; i++) {
+            model.rho[i] = in.getDouble();
+        }
+        model.label = new int[model.nr_class];
+        for (int i = 0; i < model.nr_class; i++) {
+            model.label[i] = in.getInt();
+        }
+        model.nSV = new int[model.nr_class];
+        for (int i = 0; i < model.nr_class; i++) {
+            model.nSV[i] = in.getInt();
+        }
+        model.sv_coef = new double[model.nr_class - 1][model.l];
+        for (int i = 0; i < model.nr_class - 1; i++) {
+            for (int j = 0; j < model.l; j++) {
+                model.sv_coef[i][j] = in.getDouble();
+            }
+        }
+        model.SV = new svm_node[model.l][];
+        double[] values = new double[Classifier.FEATURES_COUNT];
+        for (int i = 0; i < model.l; i++) {
+            for (int j = 0; j < Classifier.FEATURES_COUNT; j++) {
+                values[j] = in.getDouble();
+            }
+            model.SV[i] = nodes(values);
+        }
+        if (in.remaining() != 1 << Classifier.FEATURES_COUNT) {
+            throw new IOException("Corrupted classifier predictions table");
+        }
+        return new SignatureModel(model, in.slice());
+    }
+
+
+    /**
+     * Converts feature values to libsvm nodes the same way LibSVM does:
+     * only non zero values, attribute indexes start with 1.
+     */
+    private static svm_node[] nodes(double[] values) {
+        int count = 0;
+        for (double value : values) {
+            if (value != 0) {
+                count++;
+            }
+        }
+        svm_node[] nodes = new svm_node[count];
+        for (int j = 0, k = 0; j < values.length; j++) {
+            if (values[j] != 0) {
+                nodes[k] = new svm_node();
+                nodes[k].index = j + 1;
+                nodes[k].value = values[j];
+                k++;
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,85 @@
+package talon;
+
+import talon.signature.learning.Helpers;
+
+/**
+ * Runs quotation extraction and phone search on inputs making backtracking
+ * patterns slow, prints time per character for growing input sizes.
+ * <p>
+ * The time per character shouldn't grow with the input size.
+ */
+public class AdversarialInputBenchmark {
+    private static final int[] SIZES = new int[]{1000, 10000, 100000};
+
+    private interface Input {
+        String build(int size);
+    }
+
+    private static final String[] NAMES = new String[]{
+            "digit pairs", "on date beginnings", "wrote beginnings", "dashes", "dutch ending words", "marker lines"};
+
+    private static final Input[] INPUTS = new Input[]{
+            // units of RE_RELAX_PHONE never followed by a second one
+            repeat("1 a "),
+            // beginnings of RE_ON_DATE_SMB_WROTE without the ending word
+            repeat("On "),
+            // the ending word on the second line after a line of beginnings
+            new Input() {
+                @Override
+                public String build(int size) {
+                    return repeat("On ").build(size) + "\n\nwrote";
+                }
+            },
+            // dashes preceding a beginning word
+            new Input() {
+                @Override
+                public String build(int size) {
+                    return repeat("-").build(size) + "On x";
+                }
+            },
+            // ending words of RE_ON_DATE_WROTE_SMB without the colon
+            new Input() {
+                @Override
+                public String build(int size) {
+                    return "Op " + repeat("schreef ").build(size);
+                }
+            },
+            // quotation marker lines followed by text lines
+            new Input() {
+                @Override
+                public String build(int size) {
+                    return repeat(">\n").build(Math.min(size, Quotation.MAX_LINES_COUNT)) + "x\n";
+                }
+            }
+    };
+
+    private static Input repeat(final String unit) {
+        return new Input() {
+            @Override
+            public String build(int size) {
+                StringBuilder sb = new StringBuilder(size);
+                while (sb.length() < size) {
+                    sb.append(unit);
+                }
+                return sb.toString();
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < INPUTS.length; i++) {
+                StringBuilder times = new StringBuilder();
+                for (int size : SIZES) {
+                    String input = INPUTS[i].build(size);
+                    long start = System.nanoTime();
+                    int result = Quotation.extractFromPlain(input).length() + (Helpers.containsPhone(input) ? 1 : 0);
+                    long time = System.nanoTime() - start;
+                    times.append(String.format(" %d chars: %d ns/char (%d)", input.length(),
+                            time / input.length(), result));
+                }
+                System.out.printf("%s:%s%n", NAMES[i], times);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package talon;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import talon.signature.learning.Extraction;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static talon.TestMessages.BODY;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncTalonTest {
+    private static SignatureModel model;
+
+    @BeforeClass
+    public static void train() throws Exception {
+        model = TestMessages.model();
+    }
+
+    @Test
+    public void testResults() throws Exception {
+        try (AsyncTalon talon = new AsyncTalon(model)) {
+            assertEquals(Quotation.extractFromPlain(BODY), talon.extractFromPlain(BODY).get(1, TimeUnit.MINUTES));
+            assertEquals(Extraction.extract(BODY, "Bob", model), talon.extract(BODY, "Bob").get(1, TimeUnit.MINUTES));
+            assertEquals(new Talon(model).process(new Talon.Message(BODY, "Bob")),
+                    talon.process(new Talon.Message(BODY, "Bob")).get(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    public void testBoundedInFlight() throws Exception {
+        // tasks are run on demand
+        final List<Runnable> tasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        AsyncTalon talon = new AsyncTalon(model, executor, 1, 1);
+        CompletableFuture<String> first = talon.extractFromPlain(BODY);
+        CompletableFuture<ExtractedSignature> second = talon.extract(BODY, "Bob");
+        CompletableFuture<String> third = talon.extractFromPlain(BODY);
+        assertEquals(1, tasks.size());
+        assertEquals(1, talon.inFlight());
+        assertEquals(1, talon.queued());
+        assertRejected(third);
+
+        // the queued call is submitted once the running one completes
+        tasks.remove(0).run();
+        assertEquals("Reply\n\n--\nBob\n555-226-2345", first.get());
+        assertEquals(1, tasks.size());
+        assertEquals(0, talon.queued());
+        tasks.remove(0).run();
+        assertTrue(second.isDone());
+        assertEquals(0, talon.inFlight());
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        AsyncTalon talon = new AsyncTalon(model, executor, 1, 2);
+        CompletableFuture<String> first = talon.extractFromPlain(BODY);
+        CompletableFuture<String> second = talon.extractFromPlain(BODY);
+        CompletableFuture<String> third = talon.extractFromPlain(BODY);
+        second.cancel(false);
+
+        // the cancelled call is skipped
+        tasks.remove(0).run();
+        assertTrue(first.isDone());
+        assertEquals(1, tasks.size());
+        assertEquals(0, talon.queued());
+        tasks.remove(0).run();
+        assertEquals(first.get(), third.get());
+        assertEquals(0, talon.inFlight());
+    }
+
+    @Test
+    public void testRejectedByExecutor() throws Exception {
+        AsyncTalon talon = new AsyncTalon(model, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, 1, 1);
+        assertRejected(talon.extractFromPlain(BODY));
+        // the slot is released
+        assertEquals(0, talon.inFlight());
+        assertRejected(talon.extract(BODY, "Bob"));
+        assertEquals(0, talon.inFlight());
+    }
+
+    private static void assertRejected(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+}
@@ -19,4 +19,32 @@ public class CallbackMatcherTest {
             }
         }));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAppendMatches() throws Exception {
+        CallbackMatcher.AppendCallback lineStarts = new CallbackMatcher.AppendCallback() {
+            @Override
+            public void appendMatch(CharSequence input, MatchResult match, int lineStart, StringBuilder output) {
+                output.append(lineStart).append(':').append(input, match.start(), match.end());
+            }
+        };
+        CallbackMatcher matcher = new CallbackMatcher(Pattern.compile("x\\n?"));
+        assertEquals("a0:x b0:x\nc6:x", matcher.replaceMatches("ax bx\ncx", lineStarts));
+        // the input itself is returned if nothing matches
+        String input = "no matches";
+        assertSame(input, matcher.replaceMatches(input, lineStarts));
+        // the output could be reused
+        StringBuilder output = new StringBuilder("> ");
+        assertEquals("> 0:x\n2:x", matcher.replaceMatches("x\nx", lineStarts, output).toString());
+    }
+
+    @Test
+    public void testReplacementIsLiteral() throws Exception {
+        assertEquals("$1\\", new CallbackMatcher(Pattern.compile("a")).replaceMatches("a", new CallbackMatcher.ReplaceCallback() {
+            @Override
+            public String replaceMatch(MatchResult matchResult) {
+                return "$1\\";
+            }
+        }));
+    }
+}
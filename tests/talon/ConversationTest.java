@@ -0,0 +1,45 @@
+package talon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConversationTest {
+    @Test
+    public void testFindKnownLines() throws Exception {
+        Conversation conversation = new Conversation(100);
+        MessageLines lines = MessageLines.of("Reply\n\n> Hi\n>\n>  how are you?\n> Bob");
+        assertEquals(-1, conversation.findKnownLines(lines));
+        conversation.add(MessageLines.of("Hi\n\nhow are you?\nBob\n\n> earlier"));
+        assertEquals(4, conversation.size());
+        assertEquals(2, conversation.findKnownLines(lines));
+        // the history could be cut
+        assertEquals(1, conversation.findKnownLines(MessageLines.of("Reply\n> Hi\n> how are you?")));
+        // the lines should be the first lines of a message
+        assertEquals(-1, conversation.findKnownLines(MessageLines.of("Reply\n> how are you?\n> Bob")));
+        assertEquals(-1, conversation.findKnownLines(MessageLines.of("Reply\n> Hi\n> how are you?\n> Alice")));
+    }
+
+    @Test
+    public void testMaxLines() throws Exception {
+        Conversation conversation = new Conversation(5);
+        conversation.add(MessageLines.of("a\nb\nc"));
+        assertEquals(3, conversation.size());
+        assertEquals(1, conversation.findKnownLines(MessageLines.of("x\n> a\n> b")));
+        // earlier messages are cleared to fit the next one
+        conversation.add(MessageLines.of("d\ne\nf"));
+        assertEquals(3, conversation.size());
+        assertEquals(-1, conversation.findKnownLines(MessageLines.of("x\n> a\n> b")));
+        assertEquals(1, conversation.findKnownLines(MessageLines.of("x\n> d\n> e")));
+        // a message longer than max lines is indexed partly
+        conversation.add(MessageLines.of("1\n2\n3\n4\n5\n6\n7"));
+        assertEquals(5, conversation.size());
+        assertEquals(1, conversation.findKnownLines(MessageLines.of("x\n> 1\n> 2\n> 3\n> 4\n> 5")));
+        assertEquals(-1, conversation.findKnownLines(MessageLines.of("x\n> 1\n> 2\n> 3\n> 4\n> 5\n> 6")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyLines() throws Exception {
+        new Conversation(Conversation.MAX_LINES + 1);
+    }
+}
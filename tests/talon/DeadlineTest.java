@@ -0,0 +1,71 @@
+package talon;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class DeadlineTest {
+
+    @Test
+    public void testExpired() throws Exception {
+        assertFalse(Deadline.NONE.isExpired());
+        assertFalse(Deadline.after(1, TimeUnit.HOURS).isExpired());
+        assertTrue(Deadline.after(0, TimeUnit.NANOSECONDS).isExpired());
+        assertFalse(Deadline.cpuTime(1, TimeUnit.HOURS).isExpired());
+        assertTrue(Deadline.cpuTime(-1, TimeUnit.NANOSECONDS).isExpired());
+    }
+
+    @Test
+    public void testCheck() throws Exception {
+        Deadline.after(1, TimeUnit.HOURS).check();
+        try {
+            Deadline.after(0, TimeUnit.NANOSECONDS).check();
+            fail();
+        } catch (DeadlineExceededException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGuard() throws Exception {
+        String text = "some text";
+        assertSame(text, Deadline.NONE.guard(text));
+        CharSequence guarded = Deadline.after(1, TimeUnit.HOURS).guard(text);
+        assertEquals(text, guarded.toString());
+        assertEquals("text", guarded.subSequence(5, 9).toString());
+
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            longText.append('a');
+        }
+        guarded = Deadline.after(0, TimeUnit.NANOSECONDS).guard(longText);
+        try {
+            for (int i = 0; i < guarded.length(); i++) {
+                guarded.charAt(i);
+            }
+            fail();
+        } catch (DeadlineExceededException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testGuardedMatching() throws Exception {
+        // a pattern backtracking on long lines
+        Pattern slow = Pattern.compile("(.*a){12}b");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            line.append('a');
+        }
+        Deadline deadline = Deadline.after(100, TimeUnit.MILLISECONDS);
+        try {
+            slow.matcher(deadline.guard(line)).find();
+            fail();
+        } catch (DeadlineExceededException e) {
+            assertTrue(deadline.isExpired());
+        }
+    }
+}
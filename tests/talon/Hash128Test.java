@@ -0,0 +1,41 @@
+package talon;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class Hash128Test {
+    @Test
+    public void testEquals() throws Exception {
+        assertEquals(Hash128.of("body", "sender"), Hash128.of(new StringBuilder("body"), "sender"));
+        assertEquals(Hash128.of("body", null), Hash128.of("body", null));
+        // texts are delimited by their lengths
+        assertNotEquals(Hash128.of("ab", "c"), Hash128.of("a", "bc"));
+        assertNotEquals(Hash128.of("a", ""), Hash128.of("a"));
+        assertNotEquals(Hash128.of("", null), Hash128.of("", ""));
+        assertNotEquals(Hash128.of("a\u0000"), Hash128.of("a"));
+    }
+
+    @Test
+    public void testSeed() throws Exception {
+        assertEquals(Hash128.of("body"), new Hash128.Hasher(0).put("body").hash());
+        assertEquals(new Hash128.Hasher(42).put("body").hash(), new Hash128.Hasher(42).put("body").hash());
+        assertNotEquals(new Hash128.Hasher(42).put("body").hash(), new Hash128.Hasher(43).put("body").hash());
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        // no collisions among short similar texts
+        Set<Hash128> hashes = new HashSet<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            hashes.add(Hash128.of(text));
+            text.append((char) ('a' + i % 3));
+        }
+        assertEquals(10000, hashes.size());
+    }
+}
@@ -0,0 +1,39 @@
+package talon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void testMatch() throws Exception {
+        KeywordMatcher matcher = new KeywordMatcher(new String[]{"he", "she", "hers"}, new String[]{"his", "écrit"});
+        assertEquals(0, matcher.match(""));
+        assertEquals(0, matcher.match("nothing to see"));
+        assertEquals(1, matcher.match("ushers"));
+        assertEquals(2, matcher.match("this"));
+        assertEquals(3, matcher.match("she is his"));
+        // ASCII letters case is ignored
+        assertEquals(3, matcher.match("SHE IS HIS"));
+        assertEquals(2, matcher.match("a ÉCRIT a écrit"));
+        assertEquals(0, matcher.match("a ÉCRIT"));
+    }
+
+    @Test
+    public void testMatchCase() throws Exception {
+        KeywordMatcher matcher = new KeywordMatcher(false, new String[]{"Best", "best"}, new String[]{"BR"});
+        assertEquals(1, matcher.match("Best regards"));
+        assertEquals(0, matcher.match("BEST, Br"));
+        assertEquals(2, matcher.match("BR, Bob"));
+    }
+
+    @Test
+    public void testMatchLines() throws Exception {
+        KeywordMatcher matcher = new KeywordMatcher(new String[]{"wrote", "from\n:"}, new String[]{"forwarded"});
+        assertArrayEquals(new int[]{0, 1, 0, 2, 0, 1}, matcher.matchLines("a\nBob wrote\nc\n-- Forwarded --\nfrom\n:\n", 6));
+        // only requested lines are matched
+        assertArrayEquals(new int[]{0, 1}, matcher.matchLines("a\nBob wrote\nc\n-- Forwarded --", 2));
+    }
+}
@@ -0,0 +1,75 @@
+package talon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruCacheTest {
+
+    @Test
+    public void testEviction() throws Exception {
+        LruCache<String, Integer> cache = new LruCache<>(2, 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        // "b" is the least recently used
+        cache.put("c", 3);
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        LruCache<Integer, Integer> cache = new LruCache<>(100);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        // every segment holds at most its share of the capacity
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void testWeight() throws Exception {
+        LruCache<String, String> cache = new LruCache<>(100, 10, 1, new LruCache.Weigher<String, String>() {
+            @Override
+            public long weigh(String key, String value) {
+                return value.length();
+            }
+        });
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        assertEquals(8, cache.weight());
+        // "a" is evicted to make room
+        cache.put("c", "123");
+        assertNull(cache.get("a"));
+        assertEquals(7, cache.weight());
+        // replaced value's weight is subtracted
+        cache.put("b", "1");
+        assertEquals(4, cache.weight());
+        // entries heavier than the bound aren't kept, the others stay
+        cache.put("d", "12345678901");
+        assertNull(cache.get("d"));
+        assertEquals("123", cache.get("c"));
+        assertEquals("1", cache.get("b"));
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.weight());
+        // a stale value for the key is dropped
+        cache.put("c", "12345678901");
+        assertNull(cache.get("c"));
+        assertEquals(1, cache.weight());
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        LruCache<String, Integer> cache = new LruCache<>(10);
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+}
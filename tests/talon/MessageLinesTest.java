@@ -0,0 +1,67 @@
+package talon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageLinesTest {
+    @Test
+    public void testSameAsSplit() throws Exception {
+        for (String text : new String[]{"", "\n", "a", "a\n", "\na", "Hello\r\n\r\nBob\r\n\r\n", "a\r\r\nb\rc\n \n",
+                " \n\t\n", "Hi,\n\n> question\n"}) {
+            MessageLines lines = MessageLines.of(text);
+            String[] split = text.split("\r?\n");
+            assertEquals(text, Arrays.asList(split), lines(lines));
+            for (int i = 0; i < split.length; i++) {
+                assertEquals(split[i].trim().isEmpty(), lines.isBlank(i));
+                assertEquals(split[i].trim(), lines.trimmed(i));
+                assertEquals(split[i].trim().length(), lines.trimmedLength(i));
+            }
+        }
+    }
+
+    @Test
+    public void testTail() throws Exception {
+        MessageLines lines = MessageLines.tail("a\n\nb\r\n \r\n c\n\n", 2);
+        assertEquals(Arrays.asList("b", " ", " c", "", ""), lines(lines));
+        assertEquals("\n", lines.delimiter());
+        assertEquals(3, lines.start(0));
+        assertEquals(4, lines.end(0));
+        assertTrue(lines.isBlank(1));
+        assertFalse(lines.isBlank(2));
+        // fewer non blank lines than asked
+        assertEquals(Arrays.asList("a", "", "b"), lines(MessageLines.tail("a\n\nb", 5)));
+    }
+
+    @Test
+    public void testDelimiter() throws Exception {
+        assertEquals("\r\n", MessageLines.of("a\r\nb\nc").delimiter());
+        assertEquals("\n", MessageLines.of("a\rb\nc\r\n").delimiter());
+        assertEquals("\n", MessageLines.of("abc").delimiter());
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        MessageLines lines = MessageLines.of("a\r\nb\nc");
+        assertEquals("a\r\nb\r\nc", lines.join(0, lines.size(), "\r\n"));
+        assertEquals("b", lines.join(1, 2, "\n"));
+        assertEquals("", lines.join(1, 1, "\n"));
+        assertFalse(lines.isLineFeedJoined());
+        assertTrue(MessageLines.of("a\nb\n\n").isLineFeedJoined());
+        assertTrue(MessageLines.of(new String[]{"a", "b\r"}).isLineFeedJoined());
+    }
+
+    private static List<String> lines(MessageLines lines) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            result.add(lines.line(i));
+        }
+        return result;
+    }
+}
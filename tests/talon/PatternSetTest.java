@@ -0,0 +1,66 @@
+package talon;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class PatternSetTest {
+
+    @Test
+    public void testLookingAt() throws Exception {
+        PatternSet patterns = new PatternSet(Pattern.compile("(a)(b)c"), Pattern.compile("ab"),
+                Pattern.compile("x+", Pattern.CASE_INSENSITIVE));
+        PatternSet.Matcher matcher = patterns.matcher("abc ab XXx xab");
+        // the first matching pattern wins
+        assertEquals(0, matcher.lookingAt(0, 14));
+        assertEquals(3, matcher.end());
+        assertEquals(1, matcher.lookingAt(4, 14));
+        assertEquals(6, matcher.end());
+        // flags of the patterns are kept
+        assertEquals(2, matcher.lookingAt(7, 14));
+        assertEquals(10, matcher.end());
+        // patterns are anchored at the region start
+        assertEquals(-1, matcher.lookingAt(3, 14));
+        // and don't go beyond the region end
+        assertEquals(1, matcher.lookingAt(0, 2));
+        assertEquals(2, matcher.end());
+    }
+
+    @Test
+    public void testSplitters() throws Exception {
+        String[] texts = new String[]{
+                "-----Original Message-----",
+                "  --- reply message ---",
+                "10/12/2015 some text foo@bar.com",
+                "On 11-Apr-2011, at 6:54 PM, Bob <bob@example.com> wrote:",
+                "Op 17-feb.-2015, om 13:18 heeft Bob <bob@example.com> het volgende\ngeschreven:",
+                "__\nFrom: Bob",
+                "date: today",
+                "Mon, 12 Jan 2015 10:12 Bob Bobson bob@example.com:",
+                "Thu, 5 Feb 2015 10:12 Bob Bobson Jr <bob@example.com>:",
+                "Just some text",
+                "",
+                "> From: Bob"};
+        PatternSet splitters = new PatternSet(Quotation.SPLITTER_PATTERNS);
+        for (String text : texts) {
+            int expected = -1;
+            int expectedEnd = -1;
+            for (int i = 0; i < Quotation.SPLITTER_PATTERNS.length; i++) {
+                Matcher matcher = Quotation.SPLITTER_PATTERNS[i].matcher(text);
+                if (matcher.find() && matcher.start() == 0) {
+                    expected = i;
+                    expectedEnd = matcher.end();
+                    break;
+                }
+            }
+            PatternSet.Matcher matcher = splitters.matcher(text);
+            assertEquals(text, expected, matcher.lookingAt(0, text.length()));
+            if (expected >= 0) {
+                assertEquals(text, expectedEnd, matcher.end());
+            }
+        }
+    }
+}
@@ -2,6 +2,14 @@ package talon;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.*;
 
 public class QuotationTest {
@@ -9,5 +17,336 @@ public class QuotationTest {
     @Test
     public void testMarkMessageLines() throws Exception {
         assertArrayEquals("tsem".toCharArray(), Quotation.markMessageLines(new String[]{"answer", "From: foo@bar.com", "", "> question"}));
+        // splitter spread across several lines
+        assertArrayEquals("tssem".toCharArray(), Quotation.markMessageLines(new String[]{"answer", "________", "From: foo@bar.com", "", "> question"}));
+    }
+
+    @Test
+    public void testSplitterWindow() throws Exception {
+        // splitter shouldn't be searched beyond SPLITTER_MAX_LINES lines
+        String[] lines = new String[Quotation.SPLITTER_MAX_LINES + 1];
+        lines[0] = "________";
+        for (int i = 1; i < lines.length - 1; i++) {
+            lines[i] = "";
+        }
+        lines[lines.length - 1] = "From: foo@bar.com";
+        assertEquals('t', Quotation.markMessageLines(lines)[0]);
+        lines[lines.length - 2] = "From: foo@bar.com";
+        assertArrayEquals("sssss".toCharArray(), Quotation.markMessageLines(lines));
+    }
+
+    @Test
+    public void testSplitterKeywords() throws Exception {
+        KeywordMatcher keywords = new KeywordMatcher(Quotation.SPLITTER_KEYWORDS);
+        String[] splitters = new String[]{
+                "-----Original Message-----",
+                "  --- reply message ---",
+                "10/12/2015 some text foo@bar.com",
+                "Op 17-feb.-2015 heeft Bob <bob@example.com>\nhet volgende geschreven :",
+                "__\nFrom: Bob",
+                "date: today",
+                "*From:* Bob",
+                "Van\n: Bob",
+                "ENVOYé : today",
+                "Mon, 12 Jan 2015 10:12 Bob Bobson bob@example.com:"};
+        for (String splitter : splitters) {
+            assertTrue(splitter, Quotation.SPLITTERS.matcher(splitter).lookingAt(0, splitter.length()) >= 0);
+            assertEquals(splitter, 1, keywords.match(splitter));
+        }
+        assertArrayEquals("tsesetf".toCharArray(), Quotation.markMessageLines(new String[]{"answer", "Date: today", "",
+                "---- Original Message ----", "", "Some text", "---- Forwarded message ----"}));
+    }
+
+    @Test
+    public void testPatternOriginalMessage() throws Exception {
+        assertEquals("Test reply", Quotation.extractFromPlain("Test reply\n" +
+                "\n" +
+                "-----Original Message-----\n" +
+                "\n" +
+                "Test"));
+    }
+
+    @Test
+    public void testTrailingSplitter() throws Exception {
+        // a splitter below the text isn't a quotation
+        String body = "Test reply\n-----Original Message-----";
+        assertEquals(body, Quotation.extractFromPlain(body));
+        assertArrayEquals(new int[]{2, 2}, Quotation.processMarkedLines(
+                MessageLines.of(body), "ts".toCharArray()));
+        assertArrayEquals(new int[]{0, 1}, Quotation.findEmptyQuotation("ste"));
+    }
+
+    @Test
+    public void testQuotationMarkers() throws Exception {
+        assertEquals("Test reply", Quotation.extractFromPlain("Test reply\n" +
+                "\n" +
+                "> Test\n" +
+                "> question\n" +
+                ">\n" +
+                "> Roman"));
+    }
+
+    @Test
+    public void testInlineReply() throws Exception {
+        String body = "> Test\n" +
+                "answer\n" +
+                "> question\n" +
+                "> question\n" +
+                "answer";
+        assertEquals(body, Quotation.extractFromPlain(body));
+    }
+
+    @Test
+    public void testPreprocessLinks() throws Exception {
+        assertEquals("see @@http://example.com@@\n> <http://example.com/q>\n@@http://example.com/a@@",
+                Quotation.preprocess("see <http://example.com>\n> <http://example.com/q>\n<http://example.com/a>", "\n"));
+        // the link is normalized back
+        assertEquals("see <http://example.com/$1>", Quotation.postprocess(
+                Quotation.preprocess("see <http://example.com/$1>", "\n")));
+    }
+
+    @Test
+    public void testLinkInQuotation() throws Exception {
+        assertEquals("Reply <http://example.com/a>", Quotation.extractFromPlain("Reply <http://example.com/a>\n" +
+                "\n" +
+                "> Test <http://example.com/b>\n" +
+                "> question\n" +
+                "> Roman"));
+    }
+
+    @Test
+    public void testOnDateSmbWrote() throws Exception {
+        assertEquals("Reply\n On 11/12/2015, Bob <bob@example.com> wrote:",
+                Quotation.preprocess("Reply On 11/12/2015, Bob <bob@example.com> wrote:", "\n"));
+        // the ending word could be up to two lines below
+        String splitter = "On 11/12/2015, Bob <bob@example.com>\nwrote:";
+        PatternSet.Matcher matcher = Quotation.SPLITTERS.matcher(splitter);
+        assertTrue(matcher.lookingAt(0, splitter.length()) >= 0);
+        assertEquals(splitter.length(), matcher.end());
+        assertEquals("Reply", Quotation.extractFromPlain("Reply\n\n" + splitter + "\n\n> Test"));
+        assertEquals("Reply", Quotation.extractFromPlain("Reply\n\nOp 11/12/2015 heeft Bob\n<bob@example.com>\n" +
+                "het volgende geschreven:\n\n> Test"));
+    }
+
+    @Test
+    public void testOnDateSmbWroteCrlf() throws Exception {
+        assertTrue(Quotation.RE_ON_DATE_SMB_WROTE.matcher("On 11/12/2015, Bob <bob@example.com>\r\nwrote:").matches());
+        assertTrue(Quotation.RE_ON_DATE_WROTE_SMB.matcher("Op 11/12/2015 heeft Bob\r\n<bob@example.com>\r\n" +
+                "het volgende geschreven :").matches());
+        assertEquals("Reply\r\n On 11/12/2015, Bob <bob@example.com>\r\nwrote:",
+                Quotation.preprocess("Reply On 11/12/2015, Bob <bob@example.com>\r\nwrote:", "\r\n"));
+        assertEquals("Reply", Quotation.extractFromPlain("Reply\r\n\r\nOn 11/12/2015, Bob <bob@example.com>\r\n" +
+                "wrote:\r\n\r\n> Test"));
+        // the groups are numbered the same as before
+        assertEquals(5, Quotation.RE_ON_DATE_SMB_WROTE.matcher("").groupCount());
+        assertEquals(4, Quotation.RE_ON_DATE_WROTE_SMB.matcher("").groupCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testOnDateSmbWroteLongLine() throws Exception {
+        StringBuilder body = new StringBuilder("Reply\n-");
+        for (int i = 0; i < 100000; i++) {
+            body.append("On -");
+        }
+        assertEquals(body.toString(), Quotation.preprocess(body.toString(), "\n"));
+        assertEquals(body.toString(), Quotation.extractFromPlain(body.toString()));
+    }
+
+    @Test
+    public void testMarkersMatchers() throws Exception {
+        // every markers string up to 7 markers long
+        String alphabet = "emstf";
+        for (int length = 0; length <= 7; length++) {
+            for (int k = 0; k < Math.pow(alphabet.length(), length); k++) {
+                char[] markers = new char[length];
+                for (int i = 0, rest = k; i < length; i++, rest /= alphabet.length()) {
+                    markers[i] = alphabet.charAt(rest % alphabet.length());
+                }
+                String string = new String(markers);
+
+                Matcher quotation = Quotation.RE_QUOTATION.matcher(string);
+                int[] found = Quotation.findQuotation(string);
+                if (quotation.find()) {
+                    assertArrayEquals(string, new int[]{quotation.start(1), quotation.end(1)}, found);
+                } else {
+                    assertNull(string, found);
+                }
+
+                List<Integer> expected = new ArrayList<>();
+                Matcher inlineReply = Pattern.compile("(?<=m)e*((?:t+e*)+)m").matcher(string);
+                while (inlineReply.find()) {
+                    expected.add(inlineReply.start());
+                }
+                List<Integer> actual = new ArrayList<>();
+                for (int i = Quotation.findInlineReply(string, 0); i >= 0; i = Quotation.findInlineReply(string, i + 1)) {
+                    actual.add(i);
+                }
+                assertEquals(string, expected, actual);
+
+                Matcher splitterQuotation = Pattern.compile("(se*)+((t|f)+e*)+").matcher(string);
+                assertEquals(string, splitterQuotation.find() ? splitterQuotation.start() : -1,
+                        Quotation.findSplitterQuotation(string));
+
+                Matcher emptyQuotation = Quotation.RE_EMPTY_QUOTATION.matcher(string);
+                found = Quotation.findEmptyQuotation(string);
+                if (emptyQuotation.lookingAt()) {
+                    assertArrayEquals(string, new int[]{emptyQuotation.start(1), emptyQuotation.end(1)}, found);
+                } else {
+                    assertNull(string, found);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        String body = "Test reply\n\n> Test\n> question\n>\n> Roman";
+        assertEquals(new Quotation.ExtractedReply("Test reply", false),
+                Quotation.extractFromPlain(body, Deadline.after(1, TimeUnit.HOURS)));
+        assertEquals(new Quotation.ExtractedReply(body, true),
+                Quotation.extractFromPlain(body, Deadline.after(0, TimeUnit.NANOSECONDS)));
+    }
+
+    @Test
+    public void testFindQuotationLines() throws Exception {
+        String[] lines = new String[]{"text", "", "> quote", ">", "From: foo@bar.com", "On 11/12/2015, Bob",
+                "wrote:", "________", "-----Original Message-----", "(http://example.com)", "---- Forwarded message ----"};
+        Random random = new Random(1);
+        for (int k = 0; k < 20000; k++) {
+            String[] message = new String[random.nextInt(20)];
+            for (int i = 0; i < message.length; i++) {
+                message[i] = lines[random.nextInt(lines.length)];
+            }
+            MessageLines messageLines = MessageLines.of(message);
+            assertArrayEquals(Utils.join(message, "|"),
+                    Quotation.processMarkedLines(messageLines, Quotation.markMessageLines(messageLines)),
+                    Quotation.findQuotationLines(messageLines, Deadline.NONE));
+        }
+    }
+
+    @Test
+    public void testExtractSpans() throws Exception {
+        String body = "Reply <http://example.com>\r\n\r\nOn 11/12/2015, Bob wrote:\r\n> question\r\n";
+        Quotation.ReplySpans spans = Quotation.extractSpans(body);
+        assertEquals("Reply <http://example.com>", spans.getReply().toString());
+        assertEquals(0, spans.getReply().getStart());
+        assertEquals("On 11/12/2015, Bob wrote:\r\n> question", spans.getQuotation().toString());
+        assertEquals(2, spans.getQuotation().getFromLine());
+        assertEquals(4, spans.getQuotation().getToLine());
+        assertTrue(spans.getRest().isEmpty());
+
+        // splitter on the same line as the reply
+        spans = Quotation.extractSpans("Reply On 11/12/2015, Bob wrote:\n> question");
+        assertEquals("Reply", spans.getReply().toString());
+        assertEquals("On 11/12/2015, Bob wrote:\n> question", spans.getQuotation().toString());
+
+        // no quotation
+        spans = Quotation.extractSpans("\n Reply\n");
+        assertEquals("Reply", spans.getReply().toString());
+        assertEquals(7, spans.getQuotation().getStart());
+        assertTrue(spans.getQuotation().isEmpty());
+
+        // the spans hold the same text as the extracted message
+        String[] lines = new String[]{"text", "", "  ", "> quote", ">", "From: foo@bar.com", "On 11/12/2015, Bob",
+                "wrote:", "text On 11/12/2015, Bob wrote:", "<http://example.com>", "> <http://example.com>",
+                "-----Original Message-----"};
+        Random random = new Random(1);
+        for (int k = 0; k < 20000; k++) {
+            String[] message = new String[random.nextInt(20)];
+            for (int i = 0; i < message.length; i++) {
+                message[i] = lines[random.nextInt(lines.length)];
+            }
+            body = Utils.join(message, random.nextBoolean() ? "\n" : "\r\n");
+            spans = Quotation.extractSpans(body);
+            assertEquals(body, Quotation.extractFromPlain(body).replaceAll("\\s+", " "),
+                    (spans.getReply() + " " + spans.getRest()).replaceAll("\\s+", " ").trim());
+            assertTrue(body, spans.getReply().getEnd() <= spans.getQuotation().getStart());
+            assertTrue(body, spans.getQuotation().getEnd() <= spans.getRest().getStart());
+        }
+    }
+
+    @Test
+    public void testParallelMarking() throws Exception {
+        String[] lines = new String[]{"text", "", "> quote", "From: foo@bar.com", "On 11/12/2015, Bob",
+                "wrote:", "________", "Op 17-feb.-2015 heeft Bob", "het volgende geschreven :", "---- Forwarded message ----"};
+        Random random = new Random(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int k = 0; k < 20; k++) {
+                String[] message = new String[Quotation.MAX_LINES_COUNT * 3 + random.nextInt(Quotation.MAX_LINES_COUNT)];
+                for (int i = 0; i < message.length; i++) {
+                    message[i] = lines[random.nextInt(lines.length)];
+                }
+                assertArrayEquals(Quotation.markMessageLines(message),
+                        Quotation.markMessageLines(MessageLines.of(message), pool));
+            }
+            // every line starts a splitter spanning three lines, marking of the
+            // next chunk gets in step with the previous one only if it started
+            // at the same line
+            String[] message = new String[Quotation.MAX_LINES_COUNT * 3];
+            for (int i = 0; i < message.length; i++) {
+                message[i] = "On 11/12/2015, Bob wrote:";
+            }
+            assertArrayEquals(Quotation.markMessageLines(message),
+                    Quotation.markMessageLines(MessageLines.of(message), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLargeMessage() throws Exception {
+        StringBuilder body = new StringBuilder("Test reply\n\nOn 11/12/2015, Bob <bob@example.com> wrote:\n");
+        for (int i = 0; i < Quotation.MAX_LINES_COUNT * 5; i++) {
+            body.append("> Test\n");
+        }
+        // too long messages are not processed
+        assertEquals(body.toString(), Quotation.extractFromPlain(body.toString()));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals("Test reply", Quotation.extractFromPlain(body.toString(), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testExtractFromConversation() throws Exception {
+        Conversation conversation = new Conversation(10000);
+        String previous = null;
+        for (int i = 0; i < 30; i++) {
+            StringBuilder text = new StringBuilder("Reply " + i);
+            for (int j = 0; j < 40; j++) {
+                text.append("\nline ").append(j);
+            }
+            text.append("\n\nThanks,\nBob");
+            StringBuilder body = new StringBuilder(text);
+            if (previous != null) {
+                body.append("\n\nOn 11/12/2015, Bob wrote:\n");
+                for (String line : previous.split("\n", -1)) {
+                    body.append(line.isEmpty() ? ">" : "> " + line).append('\n');
+                }
+            }
+            previous = body.toString();
+            String reply = Quotation.extractFromPlain(previous, conversation);
+            assertEquals(text.toString(), reply);
+            if (MessageLines.of(Quotation.preprocess(previous, "\n")).size() <= Quotation.MAX_LINES_COUNT) {
+                assertEquals(Quotation.extractFromPlain(previous), reply);
+            }
+        }
+        // the history is too long to be processed otherwise
+        assertEquals(previous, Quotation.extractFromPlain(previous));
+
+        // unquoted history following a splitter
+        conversation = new Conversation(1000);
+        String first = "Hi Bob,\nhow are you?";
+        assertEquals(first, Quotation.extractFromPlain(first, conversation));
+        String second = "Fine\n\n-----Original Message-----\n\nHi Bob,\nhow are you?";
+        assertEquals("Fine", Quotation.extractFromPlain(second, conversation));
+        // the same lines are the text if they aren't quoted
+        String third = "Hi Bob,\nhow are you?";
+        assertEquals(third, Quotation.extractFromPlain(third, conversation));
+        String fourth = "Hi Alice\n\nHi Bob,\nhow are you?";
+        assertEquals(fourth, Quotation.extractFromPlain(fourth, conversation));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package talon;
+
+import org.junit.Test;
+import talon.signature.learning.Extraction;
+import talon.signature.learning.SignatureModel;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static talon.TestMessages.BODY;
+
+public class ResultCacheTest {
+    @Test
+    public void testCache() throws Exception {
+        SignatureModel model = TestMessages.model();
+        ResultCache cache = new ResultCache(1000, 1 << 20);
+
+        String reply = cache.extractFromPlain(BODY);
+        assertEquals(Quotation.extractFromPlain(BODY), reply);
+        assertSame(reply, cache.extractFromPlain(new StringBuilder(BODY)));
+        assertEquals(Extraction.extract(BODY, "Bob", model), cache.extract(BODY, "Bob", model));
+        assertEquals(Extraction.extract(BODY, "Alice", model), cache.extract(BODY, "Alice", model));
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+
+        // the talon looks results up in the cache
+        Talon talon = new Talon(model, ForkJoinPool.commonPool(), cache);
+        Talon.Message message = new Talon.Message(BODY, "Bob");
+        assertEquals(new Talon(model).process(message), talon.process(message));
+        assertSame(talon.process(message), talon.process(new Talon.Message(BODY, "Bob")));
+        assertEquals(3, cache.hits());
+        assertEquals(4, cache.size());
+        assertTrue(cache.bytes() > 0);
+    }
+
+    @Test
+    public void testBytesBound() throws Exception {
+        ResultCache cache = new ResultCache(1000, 64 * 1024);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            body.append("Line ").append(i).append('\n');
+            cache.extractFromPlain(body);
+        }
+        assertTrue(cache.bytes() <= 64 * 1024);
+    }
+}
@@ -0,0 +1,63 @@
+package talon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReverseLineReaderTest {
+    @Test
+    public void testLines() throws Exception {
+        assertEquals(Arrays.asList("a", "b", "c"), lines("a\nb\r\nc"));
+        assertEquals(Collections.singletonList(""), lines(""));
+        // trailing empty lines are reported
+        assertEquals(Arrays.asList("a", ""), lines("a\n"));
+        assertEquals(Arrays.asList("", "", ""), lines("\n\r\n"));
+        // only carriage returns before a line feed are terminators
+        assertEquals(Arrays.asList("a\r", "b\r"), lines("a\r\r\nb\r"));
+    }
+
+    @Test
+    public void testSameAsSplit() throws Exception {
+        for (String text : new String[]{"Hello\n\nBob", "\r\nHi\r\n\r\n  \r\nBob\r\n", "a\rb\n\rc", " \n \n"}) {
+            List<String> lines = lines(text);
+            // split drops trailing empty lines
+            while (lines.size() > 1 && lines.get(lines.size() - 1).isEmpty()) {
+                lines.remove(lines.size() - 1);
+            }
+            assertEquals(text, Arrays.asList(text.split("\r?\n")), lines);
+        }
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        ReverseLineReader reader = new ReverseLineReader("ab\r\n  \r\ncd");
+        assertTrue(reader.previous());
+        assertEquals(8, reader.start());
+        assertEquals(10, reader.end());
+        assertFalse(reader.isBlank());
+        assertTrue(reader.previous());
+        assertEquals(4, reader.start());
+        assertEquals(6, reader.end());
+        assertTrue(reader.isBlank());
+        assertTrue(reader.previous());
+        assertEquals("ab", reader.line());
+        assertFalse(reader.previous());
+    }
+
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        ReverseLineReader reader = new ReverseLineReader(text);
+        while (reader.previous()) {
+            lines.add(reader.line());
+        }
+        Collections.reverse(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,54 @@
+package talon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpanTest {
+    @Test
+    public void testText() throws Exception {
+        String input = "ab\n cd \nef";
+        Span span = Span.of(input, 3, 7);
+        assertEquals(" cd ", span.toString());
+        assertEquals(4, span.length());
+        assertEquals('c', span.charAt(1));
+        assertEquals("d", span.subSequence(2, 3).toString());
+        assertEquals(5, span.subSequence(2, 3).getStart());
+        assertEquals("cd", span.trim().toString());
+        Span trimmed = span.trim();
+        assertSame(trimmed, trimmed.trim());
+        assertTrue(Span.of(input, 2, 4).trim().isEmpty());
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        String input = "ab\n cd \nef";
+        assertEquals(0, Span.of(input).getFromLine());
+        assertEquals(3, Span.of(input).getToLine());
+        // the line break belongs to the line it ends
+        assertEquals(1, Span.of(input, 3, 8).getFromLine());
+        assertEquals(2, Span.of(input, 3, 8).getToLine());
+        assertEquals(2, Span.of(input, 8, 8).getFromLine());
+        assertEquals(2, Span.of(input, 8, 8).getToLine());
+        assertEquals(0, Span.of(input, 2, 3).getFromLine());
+        assertEquals(1, Span.of(input, 2, 3).getToLine());
+    }
+
+    @Test
+    public void testEquals() throws Exception {
+        String input = "ab\ncd";
+        assertEquals(Span.of(input, 1, 3), Span.of(input, 1, 3));
+        assertEquals(Span.of(input, 1, 3).hashCode(), Span.of(input, 1, 3).hashCode());
+        assertNotEquals(Span.of(input, 1, 3), Span.of(input, 1, 4));
+        // spans of different inputs aren't equal even if their text is the same
+        assertNotEquals(Span.of(input, 1, 3), Span.of(new StringBuilder(input), 1, 3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws Exception {
+        Span.of("ab", 1, 3);
+    }
+}
@@ -0,0 +1,49 @@
+package talon;
+
+import talon.signature.learning.Classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Processes a batch of messages on pools of growing parallelism, prints
+ * messages per second for every parallelism.
+ */
+public class TalonBenchmark {
+    private static final int[] PARALLELISM = new int[]{1, 2, 4, 8, 16};
+
+    private static final int MESSAGES = 20000;
+
+    private static final String[] BODIES = new String[]{
+            "Hi Bob,\n\nPlease find the document attached.\n\nThanks,\nJohn\n\n--\nJohn Doe\n555-226-2345\njohn@example.com\n",
+            "Sounds good, see you there.\n\nOn 11/12/2015, Bob Smith <bob@example.com> wrote:\n> Are we still on for tomorrow?\n>\n> Bob\n",
+            "Answer\n\n-----Original Message-----\nFrom: Bob Smith\nSent: Monday\nTo: John Doe\nSubject: Question\n\nQuestion\n",
+            "Short reply\n\nSent from my iPhone\n"};
+
+    public static void main(String[] args) throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        List<Talon.Message> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(new Talon.Message(BODIES[i % BODIES.length], "John Doe <john@example.com>"));
+        }
+        for (int round = 0; round < 3; round++) {
+            StringBuilder rates = new StringBuilder();
+            for (int parallelism : PARALLELISM) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    Talon talon = new Talon(classifier.model(), pool);
+                    long start = System.nanoTime();
+                    int result = talon.processBatch(messages).size();
+                    long time = System.nanoTime() - start;
+                    rates.append(String.format(" %d threads: %d messages/s (%d)", parallelism,
+                            MESSAGES * 1000000000L / time, result));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            System.out.printf("processBatch:%s%n", rates);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package talon;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TalonPipelineTest {
+    private static SignatureModel model;
+
+    @BeforeClass
+    public static void train() throws Exception {
+        model = TestMessages.model();
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        List<Talon.Message> messages = TestMessages.messages(100);
+        Talon talon = new Talon(model);
+        try (TalonPipeline pipeline = new TalonPipeline(model, 2, 3, 8)) {
+            Iterator<ExtractedSignature> results = pipeline.process(messages.iterator());
+            for (Talon.Message message : messages) {
+                assertTrue(results.hasNext());
+                assertEquals(talon.process(message), results.next());
+            }
+            assertFalse(results.hasNext());
+            assertFalse(pipeline.process(Collections.<Talon.Message>emptyIterator()).hasNext());
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        final int[] read = new int[1];
+        Iterator<Talon.Message> messages = new Iterator<Talon.Message>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Talon.Message next() {
+                read[0]++;
+                return new Talon.Message("Reply", "Bob");
+            }
+        };
+        try (TalonPipeline pipeline = new TalonPipeline(model, 1, 1, 4)) {
+            Iterator<ExtractedSignature> results = pipeline.process(messages);
+            // messages are read only to fill the buffer
+            assertTrue(results.hasNext());
+            assertEquals(4, read[0]);
+            for (int i = 0; i < 10; i++) {
+                assertEquals("Reply", results.next().getText());
+            }
+            // the last result returned makes room for one more message
+            assertEquals(13, read[0]);
+            assertTrue(results.hasNext());
+            assertEquals(14, read[0]);
+        }
+    }
+}
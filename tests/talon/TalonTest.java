@@ -0,0 +1,52 @@
+package talon;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import talon.signature.learning.Extraction.ExtractedSignature;
+import talon.signature.learning.SignatureModel;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TalonTest {
+    private static SignatureModel model;
+    private static Talon talon;
+
+    @BeforeClass
+    public static void train() throws Exception {
+        model = TestMessages.model();
+        talon = new Talon(model);
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        String body = "Hi,\n\nSee you there\n\n--\nSergey Obukhov\n\nOn 11/12/2015, Bob wrote:\n> question\n";
+        ExtractedSignature result = talon.process(new Talon.Message(body, "Sergey"));
+        assertEquals("Hi,\n\nSee you there\n", result.getText());
+        assertEquals("--\nSergey Obukhov", result.getSignature());
+
+        // quotations are stripped from plain text only
+        result = talon.process(new Talon.Message(body, "Sergey", "text/html"));
+        assertTrue(result.getSignature().endsWith("> question"));
+    }
+
+    @Test
+    public void testProcessBatch() throws Exception {
+        List<Talon.Message> messages = TestMessages.messages(100);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<ExtractedSignature> results = new Talon(model, pool).processBatch(messages);
+            assertEquals(messages.size(), results.size());
+            for (int i = 0; i < messages.size(); i++) {
+                assertEquals(talon.process(messages.get(i)), results.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Collections.emptyList(), talon.processBatch(Collections.<Talon.Message>emptyList()));
+    }
+}
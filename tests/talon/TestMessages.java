@@ -0,0 +1,50 @@
+package talon;
+
+import talon.signature.learning.Classifier;
+import talon.signature.learning.SignatureModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages and the trained model shared by the tests of the processing APIs.
+ */
+final class TestMessages {
+    /**
+     * Reply with a signature followed by a quotation.
+     */
+    static final String BODY = "Reply\n\n--\nBob\n555-226-2345\n\nOn 11/12/2015, Bob wrote:\n> question";
+
+    private static final String[] BODIES = new String[]{"Reply\n\n--\nBob\n555-226-2345\nbob@example.com",
+            "Reply\n\nOn 11/12/2015, Bob wrote:\n> question", "Reply\n> question\nAnswer", "", "Reply"};
+
+    private static SignatureModel model;
+
+    private TestMessages() {
+    }
+
+    /**
+     * Returns the model trained on the bundled data set, it's trained once.
+     */
+    static synchronized SignatureModel model() throws Exception {
+        if (model == null) {
+            Classifier classifier = Classifier.init();
+            Classifier.train(classifier);
+            model = classifier.model();
+        }
+        return model;
+    }
+
+    /**
+     * Returns distinct messages from Bob with and without signatures and
+     * quotations, every seventh one is html.
+     */
+    static List<Talon.Message> messages(int count) {
+        List<Talon.Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new Talon.Message(BODIES[i % BODIES.length] + "\n" + i, "Bob",
+                    i % 7 == 0 ? "text/html" : Talon.TEXT_PLAIN));
+        }
+        return messages;
+    }
+}
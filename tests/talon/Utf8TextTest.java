@@ -0,0 +1,77 @@
+package talon;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Utf8TextTest {
+    @Test
+    public void testDecode() throws Exception {
+        String text = "abc\r\nżółw 😀 €";
+        Utf8Text utf8 = new Utf8Text(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(text.length(), utf8.length());
+        assertEquals(text, utf8.toString());
+        assertEquals('ó', utf8.charAt(6));
+        assertEquals("w \uD83D", utf8.subSequence(8, 11).toString());
+        assertEquals("", new Utf8Text(ByteBuffer.allocate(0)).toString());
+    }
+
+    @Test
+    public void testBufferBounds() throws Exception {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(16);
+        bytes.put("xxabcxx".getBytes(StandardCharsets.UTF_8));
+        bytes.position(2).limit(5);
+        assertEquals("abc", new Utf8Text(bytes).toString());
+        // the buffer isn't changed
+        assertEquals(2, bytes.position());
+        assertEquals(5, bytes.limit());
+    }
+
+    @Test
+    public void testSurrogateOnBlockBoundary() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1023; i++) {
+            sb.append('a');
+        }
+        String text = sb.append("😀b").toString();
+        Utf8Text utf8 = new Utf8Text(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        // the low surrogate is read first so it's decoded from its own block
+        assertEquals('b', utf8.charAt(1025));
+        assertEquals('\uDE00', utf8.charAt(1024));
+        assertEquals('\uD83D', utf8.charAt(1023));
+        assertEquals(text, utf8.toString());
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        // the same characters as decoded by String, random bytes are mostly malformed
+        Random random = new Random(1);
+        byte[] units = "a\n ż€😀".getBytes(StandardCharsets.UTF_8);
+        for (int k = 0; k < 2000; k++) {
+            byte[] bytes = new byte[random.nextInt(3000)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = random.nextInt(4) == 0 ? (byte) random.nextInt(256) : units[random.nextInt(units.length)];
+            }
+            String expected = new String(bytes, StandardCharsets.UTF_8);
+            Utf8Text utf8 = new Utf8Text(ByteBuffer.wrap(bytes));
+            assertEquals(expected.length(), utf8.length());
+            // characters read backward
+            for (int i = expected.length() - 1; i >= 0; i--) {
+                assertEquals(expected.charAt(i), utf8.charAt(i));
+            }
+            assertEquals(expected, utf8.toString());
+        }
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        String body = "Reply\n\n-- \nBob\n\nOn 11/12/2015, Bob wrote:\n> question\n";
+        Utf8Text utf8 = new Utf8Text(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Quotation.extractFromPlain(body), Quotation.extractFromPlain(utf8));
+        assertEquals(Quotation.extractSpans(body).toString(), Quotation.extractSpans(utf8).toString());
+    }
+}
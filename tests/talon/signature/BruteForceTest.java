@@ -3,8 +3,7 @@ package talon.signature;
 import org.junit.Test;
 import talon.signature.learning.Helpers;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.regex.Matcher;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -12,24 +11,47 @@ import static org.junit.Assert.assertEquals;
 public class BruteforceTest {
     @Test
     public void testMarkCandidateIndexes() throws Exception {
-        assertArrayEquals("cdc".toCharArray(), Bruteforce.markCandidateIndexes(new String[]{"Some text", "", "- t", "Bob"}, Arrays.asList(0, 2, 3)));
+        assertArrayEquals("cdc".toCharArray(), Bruteforce.markCandidateIndexes(new String[]{"Some text", "", "- t", "Bob"}, new int[]{0, 2, 3}));
         int saveValue = Helpers.TOO_LONG_SIGNATURE_LINE;
         Helpers.TOO_LONG_SIGNATURE_LINE = 3;
         // spaces are not considered when checking line length
-        assertArrayEquals("clc".toCharArray(), Bruteforce.markCandidateIndexes(new String[]{"BR,  ", "long", "Bob"}, Arrays.asList(0, 1, 2)));
+        assertArrayEquals("clc".toCharArray(), Bruteforce.markCandidateIndexes(new String[]{"BR,  ", "long", "Bob"}, new int[]{0, 1, 2}));
         // only candidate lines are marked
         // if line has only dashes it's a candidate line
-        assertArrayEquals("ccdc".toCharArray(), Bruteforce.markCandidateIndexes(new String[]{"-", "long", "-", "- i", "Bob"}, Arrays.asList(0, 2, 3, 4)));
+        assertArrayEquals("ccdc".toCharArray(), Bruteforce.markCandidateIndexes(new String[]{"-", "long", "-", "- i", "Bob"}, new int[]{0, 2, 3, 4}));
         Helpers.TOO_LONG_SIGNATURE_LINE = saveValue;
     }
 
     @Test
-    public void testProcessMarkedCandidateIndexes() throws Exception {
-        assertEquals(Arrays.asList(2, 13, 15), Bruteforce.processMarkedCandidateIndexes(Arrays.asList(2, 13, 15), "dcc".toCharArray()));
-        assertEquals(Collections.singletonList(15), Bruteforce.processMarkedCandidateIndexes(Arrays.asList(2, 13, 15), "ddc".toCharArray()));
-        assertEquals(Arrays.asList(13, 15), Bruteforce.processMarkedCandidateIndexes(Arrays.asList(13, 15), "cc".toCharArray()));
-        assertEquals(Collections.singletonList(15), Bruteforce.processMarkedCandidateIndexes(Collections.singletonList(15), "lc".toCharArray()));
-        assertEquals(Collections.singletonList(15), Bruteforce.processMarkedCandidateIndexes(Arrays.asList(13, 15), "ld".toCharArray()));
+    public void testMarkedCandidateLength() throws Exception {
+        assertEquals(3, Bruteforce.candidateLength("dcc".toCharArray()));
+        assertEquals(1, Bruteforce.candidateLength("ddc".toCharArray()));
+        assertEquals(2, Bruteforce.candidateLength("cc".toCharArray()));
+        assertEquals(1, Bruteforce.candidateLength("lc".toCharArray()));
+        assertEquals(1, Bruteforce.candidateLength("ld".toCharArray()));
+    }
+
+    @Test
+    public void testCandidateLength() throws Exception {
+        // every markers string up to 8 markers long
+        String alphabet = "cdlx";
+        for (int length = 0; length <= 8; length++) {
+            for (int k = 0; k < Math.pow(alphabet.length(), length); k++) {
+                char[] markers = new char[length];
+                for (int i = 0, rest = k; i < length; i++, rest /= alphabet.length()) {
+                    markers[i] = alphabet.charAt(rest % alphabet.length());
+                }
+                String string = new String(markers);
+                Matcher matcher = Bruteforce.RE_SIGNATURE_CANDIDATE.matcher(new StringBuilder(string).reverse());
+                int expected = 0;
+                if (matcher.find() && matcher.start() == 0) {
+                    for (int i = 1; expected == 0; i++) {
+                        expected = Math.max(0, matcher.end(i));
+                    }
+                }
+                assertEquals(string, expected, Bruteforce.candidateLength(markers));
+            }
+        }
     }
 
     @Test
@@ -61,5 +83,9 @@ public class BruteforceTest {
 
         // test list (with dashes as bullet points) not included
         assertArrayEquals(new String[]{"--", "Bob"}, Bruteforce.getSignatureCandidate(new String[]{"List:", "- item 1", "- item 2", "--", "Bob"}));
+
+        // the candidate is returned as the index of its first line
+        assertEquals(3, Bruteforce.getSignatureCandidateStart(new String[]{"List:", "- item 1", "- item 2", "--", "Bob"}));
+        assertEquals(1, Bruteforce.getSignatureCandidateStart(new String[]{"abc"}));
     }
 }
@@ -0,0 +1,65 @@
+package talon.signature.learning;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ClassifierTest {
+    @Test
+    public void testMask() throws Exception {
+        assertEquals(0, Classifier.mask(new int[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+        assertEquals(0b100000000101, Classifier.mask(new int[]{1, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1}));
+        // patterns built from several lines can't be compiled
+        assertEquals(-1, Classifier.mask(new int[]{2, 0, 1, 0, 1, 0, 0, 0, 0, 0, 0, 1}));
+    }
+
+    @Test
+    public void testCompiledPredictionsMatchModel() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+
+        int[] pattern = new int[Classifier.FEATURES_COUNT];
+        for (int mask = 0; mask < 1 << Classifier.FEATURES_COUNT; mask++) {
+            for (int j = 0; j < pattern.length; j++) {
+                pattern[j] = (mask >> j) & 1;
+            }
+            assertEquals(classifier.evaluate(pattern), classifier.isSignature(pattern));
+            assertEquals(classifier.evaluate(pattern), classifier.isSignature(mask));
+        }
+        // patterns which aren't in the table are evaluated with the libsvm model
+        for (int value = 2; value < 5; value++) {
+            for (int j = 0; j < pattern.length; j++) {
+                pattern[j] = value * (j % 2);
+            }
+            assertEquals(classifier.evaluate(pattern), classifier.isSignature(pattern));
+        }
+    }
+
+    @Test
+    public void testNotBinaryPattern() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        assertFalse(classifier.isSignature(new int[]{0, 5, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        File file = File.createTempFile("classifier", ".bin");
+        file.deleteOnExit();
+        Classifier.save(classifier, file);
+        Classifier loaded = Classifier.load(file);
+        for (int mask = 0; mask < 1 << Classifier.FEATURES_COUNT; mask++) {
+            assertEquals(classifier.isSignature(mask), loaded.isSignature(mask));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotTrained() throws Exception {
+        Classifier.init().isSignature(0);
+    }
+}
@@ -1,9 +1,15 @@
 package talon.signature.learning;
 
 import org.junit.Test;
+import talon.Deadline;
+import talon.Span;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ExtractionTest {
     @Test
@@ -32,6 +38,24 @@ public class ExtractionTest {
                 Extraction.processMarkedLines(new String[]{"Some text", "", "Bob"}, "tes".toCharArray()));
     }
 
+    @Test
+    public void testSignatureStart() throws Exception {
+        // every markers string up to 8 markers long
+        String alphabet = "etsx";
+        for (int length = 0; length <= 8; length++) {
+            for (int k = 0; k < Math.pow(alphabet.length(), length); k++) {
+                char[] markers = new char[length];
+                for (int i = 0, rest = k; i < length; i++, rest /= alphabet.length()) {
+                    markers[i] = alphabet.charAt(rest % alphabet.length());
+                }
+                String string = new String(markers);
+                Matcher matcher = Extraction.RE_REVERSE_SIGNATURE.matcher(new StringBuilder(string).reverse());
+                int expected = matcher.find() && matcher.start() == 0 ? length - matcher.end() : length;
+                assertEquals(string, expected, Extraction.signatureStart(markers));
+            }
+        }
+    }
+
     @Test
     public void testBasic() throws Exception {
         Classifier classifier = Classifier.init();
@@ -57,4 +81,66 @@ public class ExtractionTest {
         Classifier.train(classifier);
         assertEquals("", Extraction.extract("Hello", "bob@foo.bar", classifier).signature);
     }
+
+    @Test
+    public void testLongBody() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        StringBuilder body = new StringBuilder("Hi,");
+        for (int i = 1; i < 10000; i++) {
+            body.append(i % 2 == 0 ? "\n" : "\r\n").append("This is the text of the message.");
+        }
+        String text = body.toString();
+        body.append("\r\n--\r\n\r\nSergey Obukhov");
+        // text lines are joined with the first delimiter of the body
+        assertEquals(new Extraction.ExtractedSignature(text.replace("\r\n", "\n").replace("\n", "\r\n"), "--\r\n\r\nSergey Obukhov"),
+                Extraction.extract(body.toString(), "Sergey", classifier));
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        String body = "Blah\r\n--\r\n\r\nSergey Obukhov\r\n";
+        assertEquals(Extraction.extract(body, "Sergey", classifier),
+                Extraction.extract(body, "Sergey", classifier.model(), Deadline.after(1, TimeUnit.HOURS)));
+        Extraction.ExtractedSignature timedOut = Extraction.extract(body, "Sergey", classifier.model(),
+                Deadline.after(0, TimeUnit.NANOSECONDS));
+        assertTrue(timedOut.isTimedOut());
+        assertEquals(new Extraction.ExtractedSignature(body.trim(), "", true), timedOut);
+    }
+
+    @Test
+    public void testExtractSpans() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        String body = "Blah\r\n--\r\n\r\nSergey Obukhov\r\n";
+        Extraction.ExtractedSignature extracted = Extraction.extract(body, "Sergey", classifier);
+        Extraction.SignatureSpans spans = Extraction.extractSpans(body, "Sergey", classifier.model());
+        assertEquals(extracted.text, spans.getText().toString());
+        assertEquals(extracted.signature, spans.getSignature().toString());
+        assertEquals(1, spans.getSignature().getFromLine());
+        assertEquals(4, spans.getSignature().getToLine());
+
+        // offsets are those of the whole input
+        String message = "> quote\r\n" + body;
+        spans = Extraction.extractSpans(Span.of(message, 9, message.length()), "Sergey", classifier.model());
+        assertEquals(9, spans.getText().getStart());
+        assertEquals(15, spans.getSignature().getStart());
+        assertEquals(extracted.signature, spans.getSignature().toString());
+
+        // no signature
+        spans = Extraction.extractSpans(" Blah\n", "Sergey", classifier.model());
+        assertEquals("Blah", spans.getText().toString());
+        assertTrue(spans.getSignature().isEmpty());
+        assertEquals(5, spans.getSignature().getStart());
+        spans = Extraction.extractSpans("Blah blah\n", "Sergey", classifier.model());
+        assertEquals("Blah blah", spans.getText().toString());
+        assertTrue(spans.getSignature().isEmpty());
+
+        // blank lines between the text and the signature
+        spans = Extraction.extractSpans("Blah\n\n\n--\nSergey Obukhov", "Sergey", classifier.model());
+        assertEquals("Blah", spans.getText().toString());
+        assertEquals("--\nSergey Obukhov", spans.getSignature().toString());
+    }
 }
@@ -0,0 +1,37 @@
+package talon.signature.learning;
+
+/**
+ * Compares features extraction with {@link FeatureSpace#buildPattern(String, Helpers.Feature[])}
+ * and {@link FeatureExtractor#extract(CharSequence)}, prints time per line.
+ */
+public class FeatureExtractorBenchmark {
+    private static final String[] LINES = new String[]{"John Doe", "VP Research and Development, Xxxx Xxxx Xxxxx",
+            "555-226-2345", "john@example.com", "Thanks, John", "--", "http://www.example.com",
+            "Please find the document attached, let me know if you have any questions.",
+            "Sent from my iPhone", "John R. Doe", "*****************"};
+
+    private static final int ITERATIONS = 200000;
+
+    public static void main(String[] args) {
+        String sender = "John Doe <john@example.com>";
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int result = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                String line = LINES[i % LINES.length];
+                result += FeatureSpace.buildPattern(line, FeatureSpace.features(sender))[0];
+            }
+            long featureSpace = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FeatureExtractor extractor = new FeatureExtractor(sender);
+            for (int i = 0; i < ITERATIONS; i++) {
+                result += extractor.extract(LINES[i % LINES.length]) & 1;
+            }
+            long fused = System.nanoTime() - start;
+
+            System.out.printf("FeatureSpace.buildPattern: %d ns/line, FeatureExtractor.extract: %d ns/line (%d)%n",
+                    featureSpace / ITERATIONS, fused / ITERATIONS, result);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package talon.signature.learning;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FeatureExtractorTest {
+    private static final String[] SAMPLES = new String[]{"John Doe", "VP Research and Development, Xxxx Xxxx Xxxxx",
+            "555-226-2345", "john@example.com", "(610) 310-5555 x5555", "+7(920) 34 57 23", "2 - 11 - 43", "1 2 3 4",
+            "12 ab 34", "12 )ab( 34", "12) abc (34", "12 )abcd( 34", "--", "-", "-- ", "--- ", "***********",
+            "*#+^-~&/$_!%:=", "_________ !", "Thanks, Bob", "thank you ,", "Best", "BEST", "BR", "Group",
+            "sent from my iPhone", "sent from my iPhone?", "sent from my iPhone ", "Sent from my iPhone",
+            "John R. Doe", "John  R  Doe", "John R.Doe", "http://example.com", "www.example.com", "www.com",
+            "www..c", "www.a.", "wwww.a.b", "... !!!", "a,b.", "( + 12 Bob", "Aaaa Bbbb Cccc dddd", "1ab  Cd",
+            "John Smith", "john", "Smith John", "Smith "};
+
+    @Test
+    public void testExtract() throws Exception {
+        String sender = "John Smith <john@example.com>";
+        FeatureExtractor extractor = new FeatureExtractor(sender);
+        Helpers.Feature[] features = FeatureSpace.features(sender);
+        for (String line : SAMPLES) {
+            assertEquals(line, Classifier.mask(FeatureSpace.buildPattern(line, features)), extractor.extract(line.trim()));
+        }
+    }
+
+    @Test
+    public void testExtractRandomLines() throws Exception {
+        String alphabet = "aAbBzZ09 1-()+.,!@:/*_#\t é";
+        String sender = "Bob <bob@example.com>";
+        FeatureExtractor extractor = new FeatureExtractor(sender);
+        Helpers.Feature[] features = FeatureSpace.features(sender);
+        Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(10) == 0) {
+                    sb.append(SAMPLES[random.nextInt(SAMPLES.length)]);
+                } else {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            String line = sb.toString().trim();
+            if (!line.isEmpty()) {
+                assertEquals(line, Classifier.mask(FeatureSpace.buildPattern(line, features)), extractor.extract(line));
+            }
+        }
+    }
+
+    @Test
+    public void testBuildPattern() throws Exception {
+        String sender = "John <john@example.com>";
+        String body = "John Doe\n" +
+                "\n" +
+                "VP Research and Development, Xxxx Xxxx Xxxxx\n" +
+                "\n" +
+                "555-226-2345\n" +
+                "\n" +
+                "john@example.com";
+        assertArrayEquals(FeatureSpace.buildPattern(body, FeatureSpace.features(sender)),
+                new FeatureExtractor(sender).buildPattern(body));
+    }
+}
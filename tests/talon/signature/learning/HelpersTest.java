@@ -37,6 +37,25 @@ public class HelpersTest {
         }
     }
 
+    @Test
+    public void testContainsPhone() throws Exception {
+        for (String phone : VALID_PHONE_NUMBERS) {
+            assertTrue(phone, Helpers.containsPhone("call " + phone + " now"));
+        }
+        for (String line : new String[]{"", "1", "12", "1 a 1 a 1", "12 ab 34", "12\n34", "(1) 2"}) {
+            assertEquals(line, Helpers.RE_RELAX_PHONE.matcher(line).find(), Helpers.containsPhone(line));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testContainsPhoneLongLine() throws Exception {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            line.append("1 a ");
+        }
+        assertFalse(Helpers.containsPhone(line));
+    }
+
     @Test
     public void testMatchNames() throws Exception {
         assertTrue(Helpers.RE_NAME.matcher("John R. Doe").matches());
@@ -0,0 +1,50 @@
+package talon.signature.learning;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class SenderProfileTest {
+    @Test
+    public void testContainsNames() throws Exception {
+        assertTrue(SenderProfile.of("Sergey N.  Obukhov <xxx@example.com>").containsNames("Sergey Obukhov"));
+        assertTrue(SenderProfile.of("Sergey N.  Obukhov <xxx@example.com>").containsNames("BR, Sergey N."));
+        assertTrue(SenderProfile.of("<serobnic@mail.ru>").containsNames("Serobnic"));
+        assertTrue(SenderProfile.of("<serobnic@mail.ru>").containsNames("serobnic"));
+        assertFalse(SenderProfile.of("<serobnic@mail.ru>").containsNames("SEROBNIC"));
+        assertFalse(SenderProfile.of("").containsNames("anything"));
+    }
+
+    @Test
+    public void testSameAsPattern() throws Exception {
+        String[] senders = new String[]{"Sergey N.  Obukhov <serobnic@example.com>", "John Smith <john@example.com>",
+                "<bob@example.com>", "Doe III, John </O=EXAMPLE/OU=NA/CN=RECIPIENTS/CN=jDOE5>", "mail.ru", ""};
+        String[] texts = new String[]{"Sergey", "sergey", "Obukhov Sergey", "Sergey Obukhov", "John", "john smith",
+                "John Smith", "Smith John", "Smith", "smith", "Bob", "bob", "III", "Doe III", "Doe John", "John  Doe",
+                "jDOE", "JDOE", "EXAMPLE", ""};
+        for (String sender : senders) {
+            Pattern pattern = namesPattern(sender);
+            for (String text : texts) {
+                assertEquals(sender + ": " + text, pattern != null && pattern.matcher(text).find(),
+                        SenderProfile.of(sender).containsNames(text));
+            }
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        assertSame(SenderProfile.of("John Smith <john@example.com>"), SenderProfile.of("John Smith <john@example.com>"));
+    }
+
+    private static Pattern namesPattern(String sender) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : Helpers.extractNames(sender)) {
+            if (sb.length() > 0)
+                sb.append("( |$)");
+            sb.append(name).append("|").append(Character.toUpperCase(name.charAt(0))).append(name.substring(1));
+        }
+        return sb.length() > 0 ? Pattern.compile(sb.toString()) : null;
+    }
+}
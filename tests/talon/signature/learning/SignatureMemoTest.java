@@ -0,0 +1,102 @@
+package talon.signature.learning;
+
+import org.junit.Test;
+import talon.Deadline;
+import talon.MessageLines;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SignatureMemoTest {
+    @Test
+    public void testExtract() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        SignatureModel model = classifier.model();
+        SignatureMemo memo = new SignatureMemo(100);
+
+        String body = "Hey man!\n\n--\nBob Smith\n555-226-2345";
+        assertEquals(Extraction.extract(body, "Bob Smith <bob@example.com>", model),
+                Extraction.extract(body, "Bob Smith <bob@example.com>", model, memo, Deadline.NONE));
+        assertEquals(0, memo.hits());
+        assertEquals(1, memo.misses());
+
+        // the next message of the sender ends with the same signature
+        String next = "Thanks,\nsee you tomorrow\n\n  --  \nBob Smith\n\n555-226-2345\n";
+        assertEquals(Extraction.extract(next, "bob@example.com", model),
+                Extraction.extract(next, "BOB@example.com", model, memo, Deadline.NONE));
+        assertEquals(1, memo.hits());
+        assertEquals(0.5, memo.hitRatio(), 0);
+
+        // the signature of another sender isn't used
+        assertEquals(-1, memo.find(MessageLines.of(next), "alice@example.com"));
+
+        // the deadline applies with the memo too
+        assertTrue(Extraction.extract(body, "alice@example.com", model, memo,
+                Deadline.after(0, TimeUnit.NANOSECONDS)).isTimedOut());
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        SignatureMemo memo = new SignatureMemo(100);
+        MessageLines lines = MessageLines.of("Hi\n\n--\nBob");
+        assertEquals(-1, memo.find(lines, "bob"));
+        memo.remember(lines, 2, "bob");
+        assertEquals(2, memo.find(lines, "bob"));
+        assertEquals(1, memo.find(MessageLines.of("Hi\n--\n\nBob\n"), "bob"));
+        // a different last line
+        assertEquals(-1, memo.find(MessageLines.of("Hi\n--\nBob Smith"), "bob"));
+        // no text above the signature
+        assertEquals(-1, memo.find(MessageLines.of("\n--\nBob"), "bob"));
+
+        // the most recent signatures are kept
+        for (int i = 0; i < SignatureMemo.SIGNATURES_PER_SENDER; i++) {
+            memo.remember(MessageLines.of("Hi\n\n" + i), 2, "bob");
+        }
+        assertEquals(-1, memo.find(lines, "bob"));
+        assertEquals(2, memo.find(MessageLines.of("Hello\n\n0"), "bob"));
+    }
+
+    @Test
+    public void testBound() throws Exception {
+        // a single slot is taken by the last sender
+        SignatureMemo memo = new SignatureMemo(1);
+        MessageLines lines = MessageLines.of("Hi\n--\nBob");
+        memo.remember(lines, 1, "bob");
+        memo.remember(MessageLines.of("Hi\n--\nAlice"), 1, "alice");
+        assertEquals(-1, memo.find(lines, "bob"));
+        assertEquals(1, memo.find(MessageLines.of("Hello\n--\nAlice"), "alice"));
+        assertNotEquals(SignatureMemo.senderKey("bob"), SignatureMemo.senderKey("alice"));
+        assertEquals(SignatureMemo.senderKey("bob@example.com"), SignatureMemo.senderKey("Bob <BOB@example.com>"));
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        File file = File.createTempFile("signatures", ".memo");
+        try {
+            MessageLines lines = MessageLines.of("Hi\n--\nBob");
+            SignatureMemo memo = SignatureMemo.open(file, 10);
+            memo.remember(lines, 1, "bob");
+            memo.flush();
+            assertEquals(1, SignatureMemo.open(file, 10).find(lines, "bob"));
+            // the memo is cleared if the number of senders changes
+            assertEquals(-1, SignatureMemo.open(file, 20).find(lines, "bob"));
+            assertEquals(-1, SignatureMemo.open(file, 10).find(lines, "bob"));
+
+            // the memo persists after the number of senders is reduced
+            memo = SignatureMemo.open(file, 20);
+            memo.remember(lines, 1, "bob");
+            memo.flush();
+            memo = SignatureMemo.open(file, 5);
+            memo.remember(lines, 1, "bob");
+            memo.flush();
+            assertEquals(1, SignatureMemo.open(file, 5).find(lines, "bob"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package talon.signature.learning;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SignatureModelTest {
+    private static final String[] BODIES = new String[]{
+            "Blah\r\n--\r\n\r\nSergey Obukhov",
+            "Hello",
+            "Blah\n\nBob,\nIf there are more than\n2 non signature lines in the end\nIt's not signature\n",
+            "Hi,\n\nsee the document attached.\n\nThanks,\nJohn Doe\nVP Research\n555-226-2345\njohn@example.com",
+            "Short answer\n\n--\nBob Smith\nhttp://www.example.com"};
+
+    private static final String[] SENDERS = new String[]{"Sergey", "bob@foo.bar", "Bob",
+            "John Doe <john@example.com>", "Bob Smith <bob@example.com>"};
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        SignatureModel model = classifier.model();
+        File file = File.createTempFile("signature", ".model");
+        file.deleteOnExit();
+        model.save(file);
+        SignatureModel loaded = SignatureModel.load(file);
+
+        int[] pattern = new int[Classifier.FEATURES_COUNT];
+        for (int mask = 0; mask < 1 << Classifier.FEATURES_COUNT; mask++) {
+            for (int j = 0; j < pattern.length; j++) {
+                pattern[j] = (mask >> j) & 1;
+            }
+            assertEquals(model.isSignature(pattern), loaded.isSignature(pattern));
+        }
+        // patterns which aren't in the table are evaluated with the saved model
+        for (int value = 2; value < 5; value++) {
+            for (int j = 0; j < pattern.length; j++) {
+                pattern[j] = value * (j % 2);
+            }
+            assertEquals(model.isSignature(pattern), loaded.isSignature(pattern));
+        }
+        assertEquals(model.fingerprint(), loaded.fingerprint());
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadNotModel() throws Exception {
+        SignatureModel.load(ByteBuffer.wrap("not a classifier".getBytes()));
+    }
+
+    @Test
+    public void testLoadCorrupted() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        File file = File.createTempFile("signature", ".model");
+        file.deleteOnExit();
+        classifier.model().save(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // truncated files
+        for (int length = 0; length < bytes.length; length += 1 + length / 8) {
+            assertCorrupted(ByteBuffer.wrap(bytes, 0, length));
+        }
+        // classes and vectors counts at offsets 40 and 44
+        for (int count : new int[]{Integer.MIN_VALUE, -1, 0, 1, 3, Integer.MAX_VALUE}) {
+            assertCorrupted(ByteBuffer.wrap(bytes.clone()).putInt(40, count));
+        }
+        for (int count : new int[]{Integer.MIN_VALUE, -1, Integer.MAX_VALUE}) {
+            assertCorrupted(ByteBuffer.wrap(bytes.clone()).putInt(44, count));
+        }
+    }
+
+    private static void assertCorrupted(ByteBuffer buffer) {
+        try {
+            SignatureModel.load(buffer);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentExtraction() throws Exception {
+        Classifier classifier = Classifier.init();
+        Classifier.train(classifier);
+        final SignatureModel model = classifier.model();
+
+        final Extraction.ExtractedSignature[] expected = new Extraction.ExtractedSignature[BODIES.length];
+        for (int i = 0; i < BODIES.length; i++) {
+            expected[i] = Extraction.extract(BODIES[i], SENDERS[i], model);
+        }
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Extraction.ExtractedSignature[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<Extraction.ExtractedSignature[]>() {
+                    @Override
+                    public Extraction.ExtractedSignature[] call() throws Exception {
+                        Extraction.ExtractedSignature[] results = new Extraction.ExtractedSignature[BODIES.length];
+                        for (int iteration = 0; iteration < 2000; iteration++) {
+                            for (int i = 0; i < BODIES.length; i++) {
+                                results[i] = Extraction.extract(BODIES[i], SENDERS[i], model);
+                                if (!results[i].equals(expected[i])) {
+                                    return results;
+                                }
+                            }
+                        }
+                        return results;
+                    }
+                }));
+            }
+            for (Future<Extraction.ExtractedSignature[]> future : futures) {
+                assertArrayEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}